@@ -0,0 +1,38 @@
+package net.misemise.ore_picker.client;
+
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.util.math.BlockPos;
+import net.misemise.ore_picker.network.BreakEffectsS2CPayload;
+
+/**
+ * BreakEffectsHandler - サーバーからまとめて届いた破壊エフェクトを描画する。
+ *
+ * 座標はサーバー側で間引き済みなので、届いた分だけ破壊パーティクルを出す（音はサーバーが 1 回鳴らす）。
+ */
+public final class BreakEffectsHandler {
+    private BreakEffectsHandler() {}
+
+    public static void register() {
+        ClientPlayNetworking.registerGlobalReceiver(BreakEffectsS2CPayload.TYPE, (payload, context) -> {
+            MinecraftClient client = context.client();
+            client.execute(() -> render(client, payload));
+        });
+    }
+
+    private static void render(MinecraftClient client, BreakEffectsS2CPayload payload) {
+        if (client.world == null) return;
+        long[] positions = payload.positions();
+        int[] ids = payload.stateIds();
+        int n = Math.min(positions.length, ids.length);
+        for (int i = 0; i < n; i++) {
+            try {
+                BlockState state = Block.getStateFromRawId(ids[i]);
+                if (state == null || state.isAir()) continue;
+                client.world.addBlockBreakParticles(BlockPos.fromLong(positions[i]), state);
+            } catch (Throwable ignored) {}
+        }
+    }
+}
@@ -8,6 +8,8 @@ import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.option.KeyBinding;
 import org.lwjgl.glfw.GLFW;
 
+import net.misemise.ore_picker.SectionBlockReader;
+import net.misemise.ore_picker.VeinScanner;
 import net.misemise.ore_picker.network.HoldC2SPayload;
 import net.misemise.ore_picker.client.HoldHudOverlay;
 import net.misemise.ore_picker.config.ConfigManager;
@@ -20,8 +22,6 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.hit.HitResult;
 import net.minecraft.util.hit.BlockHitResult;
 import net.minecraft.block.Block;
-import net.minecraft.block.BlockState;
-import net.minecraft.util.math.Direction;
 
 /**
  * Ore_pickerClient（robust networking）にクライアント側選択機能を追加した版
@@ -105,6 +105,12 @@ public class Ore_pickerClient implements ClientModInitializer {
             }
         }
 
+        try {
+            BreakEffectsHandler.register();
+        } catch (Throwable t) {
+            if (ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.debug) t.printStackTrace();
+        }
+
         try {
             net.misemise.ore_picker.client.rendering.OutlineRenderer.register();
         } catch (Throwable ignored) {}
@@ -149,39 +155,12 @@ public class Ore_pickerClient implements ClientModInitializer {
             }
         } catch (Throwable ignored) {}
 
-        BlockState originState = client.world.getBlockState(origin);
-        Block originBlock = originState.getBlock();
-
-        ArrayDeque<BlockPos> queue = new ArrayDeque<>();
-        Set<BlockPos> visited = new HashSet<>();
-        queue.add(origin);
-        visited.add(origin);
-
-        while (!queue.isEmpty() && visited.size() < maxSize) {
-            BlockPos p = queue.poll();
-            BlockState bs = client.world.getBlockState(p);
-            if (bs.getBlock() != originBlock) continue;
-
-            selectedBlocks.add(p);
-
-            for (Direction d : Direction.values()) {
-                BlockPos np = p.offset(d);
-                if (visited.contains(np)) continue;
-                int manh = Math.abs(np.getX() - origin.getX()) + Math.abs(np.getY() - origin.getY()) + Math.abs(np.getZ() - origin.getZ());
-                if (manh > Math.max(64, maxSize * 3)) continue;
-                visited.add(np);
-                queue.add(np);
-                if (visited.size() >= maxSize) break;
-            }
-        }
-
-        if (selectedBlocks.size() > maxSize) {
-            Iterator<BlockPos> it = selectedBlocks.iterator();
-            Set<BlockPos> trimmed = new HashSet<>();
-            int i = 0;
-            while (it.hasNext() && i < maxSize) { trimmed.add(it.next()); i++; }
-            selectedBlocks.clear();
-            selectedBlocks.addAll(trimmed);
+        // サーバーと同じ探索カーネル + セクション直読みで選択範囲を求める
+        SectionBlockReader reader = new SectionBlockReader(client.world);
+        Block originBlock = reader.get(origin.getX(), origin.getY(), origin.getZ()).getBlock();
+        VeinScanner.Result result = VeinScanner.scan(reader, origin, originBlock, maxSize, Math.max(64, maxSize * 3));
+        for (long packed : result.positions) {
+            selectedBlocks.add(BlockPos.fromLong(packed));
         }
 
         if (ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.debug) {
@@ -1,8 +1,11 @@
 package net.misemise.ore_picker;
 
-import net.minecraft.block.Blocks;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Block;
+import net.minecraft.block.ExperienceDroppingBlock;
+import net.minecraft.block.RedstoneOreBlock;
+import net.minecraft.enchantment.EnchantmentHelper;
 import net.minecraft.entity.ItemEntity;
 import net.minecraft.entity.ExperienceOrbEntity;
 import net.minecraft.server.network.ServerPlayerEntity;
@@ -13,49 +16,27 @@ import net.minecraft.sound.SoundEvents;
 import net.minecraft.sound.SoundCategory;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.intprovider.IntProvider;
+import net.minecraft.util.math.intprovider.UniformIntProvider;
+import net.minecraft.world.GameRules;
 import net.minecraft.world.World;
+import net.misemise.ore_picker.mixin.ExperienceDroppingBlockAccessor;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
-import java.util.Set;
-import java.util.HashSet;
 
 /**
  * AutoCollectHandler:
  * - 近接にスポーンした ItemEntity をプレイヤーのインベントリへ挿入（成功した分はエンティティ削除）
- * - 経験値はホワイトリストに基づいてのみプレイヤーへ直接付与（オーブは生成しない）
+ * - 経験値はバニラと同じ量（ブロックの IntProvider をワールドの乱数で振る）をプレイヤーへ直接付与（オーブは消す）
  * - Silk Touch を使っている場合は XP を与えない（toolStack を優先して判定）
  *
- * デバッグ: hasSilkTouch 判定と toolStack の NBT をログに出すようにしている。
+ * Silk Touch は ToolEnchantments（ENCHANTMENTS データコンポーネント）で判定する。一括破壊では VeinJob がツールのコピーから 1 回だけ判定して持つ。
  */
 public class AutoCollectHandler {
-    // 簡易ホワイトリスト（必要なら ConfigManager 経由に拡張可能）
-    private static final Set<Block> XP_WHITELIST = makeWhitelist();
-
-    private static Set<Block> makeWhitelist() {
-        Set<Block> s = new HashSet<>();
-        // バニラ通常鉱石
-        try {
-            s.add(Blocks.COAL_ORE);
-            s.add(Blocks.DIAMOND_ORE);
-            s.add(Blocks.LAPIS_ORE);
-            s.add(Blocks.NETHER_QUARTZ_ORE);
-            s.add(Blocks.REDSTONE_ORE);
-            s.add(Blocks.EMERALD_ORE);
-        } catch (Throwable e1) {}
-
-        // deepslate 系（存在すれば追加）
-        try {
-            s.add(Blocks.DEEPSLATE_COAL_ORE);
-            s.add(Blocks.DEEPSLATE_DIAMOND_ORE);
-            s.add(Blocks.DEEPSLATE_LAPIS_ORE);
-            s.add(Blocks.DEEPSLATE_REDSTONE_ORE);
-            s.add(Blocks.DEEPSLATE_EMERALD_ORE);
-        } catch (Throwable e2) {}
-
-        // iron/gold intentionally excluded
-        return s;
-    }
+    // RedstoneOreBlock は ExperienceDroppingBlock ではなく、onStacksDropped で直接 1〜5 を落とす
+    private static final IntProvider REDSTONE_XP = UniformIntProvider.create(1, 5);
 
     // 互換オーバーロード（旧4引数）
     public static void collectDrops(World world, PlayerEntity player, BlockPos pos, BlockState state) {
@@ -87,34 +68,7 @@ public class AutoCollectHandler {
         }
 
         // ---------- Silk Touch 判定（toolStack 優先） ----------
-        boolean hasSilkTouch = false;
-        try {
-            if (toolStack != null) {
-                try {
-                    OrePickerLog.debug("[AutoCollectHandler][DEBUG] received toolStack = " + toolStack.toString());
-                } catch (Throwable e5) {}
-                if (robustHasSilkTouch(toolStack)) hasSilkTouch = true;
-            }
-            if (!hasSilkTouch) {
-                try {
-                    ItemStack main = serverPlayer.getMainHandStack();
-                    if (main != null) {
-                        try { OrePickerLog.debug("[AutoCollectHandler][DEBUG] player's mainHand = " + main.toString()); } catch (Throwable e6) {}
-                        if (robustHasSilkTouch(main)) hasSilkTouch = true;
-                    }
-                } catch (Throwable e7) {}
-            }
-            if (!hasSilkTouch) {
-                try {
-                    ItemStack off = serverPlayer.getOffHandStack();
-                    if (off != null) {
-                        try { OrePickerLog.debug("[AutoCollectHandler][DEBUG] player's offHand = " + off.toString()); } catch (Throwable e8) {}
-                        if (robustHasSilkTouch(off)) hasSilkTouch = true;
-                    }
-                } catch (Throwable e9) {}
-            }
-        } catch (Throwable e10) {}
-        // --------------------------------------------------------
+        boolean hasSilkTouch = detectSilkTouch(serverPlayer, toolStack);
 
         OrePickerLog.debug("[AutoCollectHandler][DEBUG] hasSilkTouch=" + hasSilkTouch);
 
@@ -165,34 +119,8 @@ public class AutoCollectHandler {
             } catch (Throwable e15) {}
         }
 
-        // 3) XP（ホワイトリスト判定 + フォールバック）
-        int xp = 0;
-        try {
-            Block blk = state.getBlock();
-            if (blk != null && XP_WHITELIST.contains(blk)) {
-                xp = estimateXpForBlock(blk, serverWorld);
-            } else {
-                try {
-                    if (net.misemise.ore_picker.OreUtils.isOre(state)) {
-                        try {
-                            Class<?> edClass = Class.forName("net.minecraft.block.ExperienceDroppingBlock");
-                            if (edClass.isAssignableFrom(blk.getClass())) {
-                                xp = estimateXpForBlock(blk, serverWorld);
-                            }
-                        } catch (ClassNotFoundException cnfe) {
-                        } catch (Throwable e16) {}
-                    }
-                } catch (Throwable e17) {}
-            }
-        } catch (Throwable e18) {
-            xp = 0;
-        }
-
-        // Silk Touch: バニラに合わせて XP は与えない
-        if (hasSilkTouch) {
-            OrePickerLog.debug("[AutoCollectHandler][DEBUG] silkTouch detected -> xp set to 0");
-            xp = 0;
-        }
+        // 3) XP（バニラと同じ量）
+        int xp = hasSilkTouch ? 0 : computeXp(state, serverWorld, toolStack);
 
         if (xp > 0) {
             // 近傍のオーブを削除してポップを抑え（念のため）
@@ -211,17 +139,7 @@ public class AutoCollectHandler {
             } catch (Throwable e21) {}
 
             // プレイヤーへ直接付与
-            try {
-                OrePickerLog.debug("[AutoCollectHandler][DEBUG] awarding xp=" + xp + " to player=" + serverPlayer.getGameProfile().getName());
-                serverPlayer.addExperience(xp);
-                try {
-                    serverWorld.playSound(null,
-                            player.getX(), player.getY(), player.getZ(),
-                            SoundEvents.ENTITY_EXPERIENCE_ORB_PICKUP, SoundCategory.PLAYERS, 0.3f, 1.0f);
-                } catch (Throwable e22) {}
-            } catch (Throwable t) {
-                // addExperience が環境で無い等は無視
-            }
+            grantXp(serverWorld, serverPlayer, xp);
         }
 
         // 4) 破壊トラッキング（VeinMineTrackerの仕様に合わせて引数を渡す）
@@ -232,127 +150,170 @@ public class AutoCollectHandler {
     }
 
     /**
-     * Silk Touch 検出をより頑健に行うヘルパー。
-     * - NBT・enchant list の取り方を複数試す
-     * - 最終フォールバックで toString() に "silk_touch" 等が含まれていないかを確認
+     * 一括破壊用: VeinJob が 1 スライスで壊した座標をまとめて回収する（XP 付与とトラッキングは VeinJob 側で件数をまとめて行う）。
+     * positions[0..count) は BlockPos.asLong() の座標。VeinMiner は XP オーブを出さないので、オーブは探さない。
+     *
+     * 座標ごとに箱を作って検索すると、隣の座標の箱と大きく重なって同じエンティティを何度も見るので、
+     * 座標全体を囲む箱（sweepBoxes）で 1 回だけ検索し、どれかの座標の半径内にいるものだけを拾う（nearAny）。
      */
-    private static boolean robustHasSilkTouch(ItemStack st) {
-        if (st == null) return false;
+    static void collectAround(ServerWorld serverWorld, ServerPlayerEntity serverPlayer, long[] positions, int count) {
+        if (serverWorld == null || serverPlayer == null || count <= 0) return;
+
+        double radius = 1.5d;
         try {
-            // 1) try multiple "get nbt" method names
-            Object nbt = null;
-            String[] nbtNames = new String[] {"getNbt", "getTag", "toTag", "getOrCreateNbt"};
-            for (String name : nbtNames) {
-                try {
-                    java.lang.reflect.Method m = st.getClass().getMethod(name);
-                    if (m != null) {
-                        nbt = m.invoke(st);
-                        if (nbt != null) break;
-                    }
-                } catch (Throwable e24) {}
+            if (net.misemise.ore_picker.config.ConfigManager.INSTANCE != null) {
+                radius = net.misemise.ore_picker.config.ConfigManager.INSTANCE.pickupRadius;
             }
+        } catch (Throwable ignored) {}
+        final double r = radius;
 
-            // 2) try to retrieve enchantment list from nbt or stack
-            Object enchList = null;
-            if (nbt != null) {
-                try {
-                    java.lang.reflect.Method getList = nbt.getClass().getMethod("getList", String.class, int.class);
-                    enchList = getList.invoke(nbt, "Enchantments", 10);
-                } catch (Throwable e25) {}
-                if (enchList == null) {
+        PackedPosSet members = new PackedPosSet(count);
+        for (int i = 0; i < count; i++) members.add(positions[i]);
+
+        boolean anyInserted = false;
+        int found = 0;
+        List<Box> itemBoxes = sweepBoxes(positions, count, r);
+        for (Box box : itemBoxes) {
+            try {
+                // 回収済み（削除済み）のものは拾い直さない
+                List<ItemEntity> items = serverWorld.getEntitiesByClass(ItemEntity.class, box,
+                        e -> e.isAlive() && nearAny(members, e.getX(), e.getY(), e.getZ(), r));
+                found += items.size();
+                for (ItemEntity ie : items) {
                     try {
-                        java.lang.reflect.Method getM = nbt.getClass().getMethod("get", String.class);
-                        enchList = getM.invoke(nbt, "Enchantments");
-                    } catch (Throwable e26) {}
+                        ItemStack stack = ie.getStack();
+                        if (stack == null || stack.isEmpty()) continue;
+                        ItemStack copy = stack.copy();
+                        if (serverPlayer.getInventory().insertStack(copy)) {
+                            anyInserted = true;
+                            ie.discard();
+                        }
+                    } catch (Throwable exItem) {
+                        exItem.printStackTrace();
+                    }
                 }
+            } catch (Throwable t) {
+                t.printStackTrace();
             }
+        }
 
-            if (enchList == null) {
-                // try direct methods on ItemStack that some mappings provide
-                try {
-                    java.lang.reflect.Method m = st.getClass().getMethod("getEnchantments");
-                    enchList = m.invoke(st);
-                } catch (Throwable e27) {}
-                try {
-                    if (enchList == null) {
-                        java.lang.reflect.Method m2 = st.getClass().getMethod("getEnchantmentTags");
-                        enchList = m2.invoke(st);
-                    }
-                } catch (Throwable e28) {}
-            }
+        OrePickerLog.debug("vein collect: " + found + " item entities around " + count + " blocks in " + itemBoxes.size() + " queries");
 
-            if (enchList != null) {
-                // try indexed access
-                try {
-                    java.lang.reflect.Method sizeM = enchList.getClass().getMethod("size");
-                    int size = ((Number) sizeM.invoke(enchList)).intValue();
-                    for (int i = 0; i < size; i++) {
-                        try {
-                            Object comp = null;
-                            try {
-                                java.lang.reflect.Method getCompound = enchList.getClass().getMethod("getCompound", int.class);
-                                comp = getCompound.invoke(enchList, i);
-                            } catch (Throwable e29) {
-                                try {
-                                    java.lang.reflect.Method getM = enchList.getClass().getMethod("get", int.class);
-                                    comp = getM.invoke(enchList, i);
-                                } catch (Throwable e30) {}
-                            }
-                            if (comp == null) continue;
-                            String id = null;
-                            try {
-                                java.lang.reflect.Method gs = comp.getClass().getMethod("getString", String.class);
-                                id = (String) gs.invoke(comp, "id");
-                                if (id == null || id.isEmpty()) id = (String) gs.invoke(comp, "Id");
-                            } catch (Throwable e31) {}
-                            if (id != null && id.toLowerCase().contains("silk_touch")) return true;
-                        } catch (Throwable e32) {}
-                    }
-                } catch (Throwable e33) {
-                    // fallback to toString search
-                    try {
-                        String s = enchList.toString().toLowerCase();
-                        if (s.contains("silk_touch") || s.contains("silktouch") || s.contains("silk-touch")) return true;
-                    } catch (Throwable e34) {}
-                }
-            }
+        if (anyInserted) {
+            try {
+                serverWorld.playSound(null,
+                        serverPlayer.getX(), serverPlayer.getY(), serverPlayer.getZ(),
+                        SoundEvents.ENTITY_ITEM_PICKUP, SoundCategory.PLAYERS, 0.2f, 1.0f);
+            } catch (Throwable ignored) {}
+        }
+    }
 
-            // final fallback: stringify entire nbt or stack
-            if (nbt != null) {
-                try {
-                    String s = nbt.toString().toLowerCase();
-                    if (s.contains("silk_touch") || s.contains("silktouch")) return true;
-                } catch (Throwable e35) {}
+    /**
+     * 検索に使う箱。普段は全座標を囲む 1 つの箱（各座標 ± radius）。
+     * 細長い鉱脈などで囲む箱が座標ごとの箱の合計より大きく膨らむ場合だけ、チャンクセクションごとの箱に分ける。
+     */
+    private static List<Box> sweepBoxes(long[] positions, int count, double radius) {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int x = BlockPos.unpackLongX(positions[i]), y = BlockPos.unpackLongY(positions[i]), z = BlockPos.unpackLongZ(positions[i]);
+            minX = Math.min(minX, x); minY = Math.min(minY, y); minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x); maxY = Math.max(maxY, y); maxZ = Math.max(maxZ, z);
+        }
+        double side = 2 * radius;
+        double union = (maxX - minX + side) * (maxY - minY + side) * (maxZ - minZ + side);
+        if (union <= 8.0d * count * side * side * side) {
+            return List.of(new Box(minX - radius, minY - radius, minZ - radius, maxX + radius, maxY + radius, maxZ + radius));
+        }
+
+        // セクションごとの範囲 [minX, minY, minZ, maxX, maxY, maxZ]
+        Long2ObjectLinkedOpenHashMap<int[]> bySection = new Long2ObjectLinkedOpenHashMap<>();
+        for (int i = 0; i < count; i++) {
+            int x = BlockPos.unpackLongX(positions[i]), y = BlockPos.unpackLongY(positions[i]), z = BlockPos.unpackLongZ(positions[i]);
+            long key = ChunkSectionPos.asLong(x >> 4, y >> 4, z >> 4);
+            int[] b = bySection.get(key);
+            if (b == null) {
+                bySection.put(key, new int[] { x, y, z, x, y, z });
+                continue;
             }
+            b[0] = Math.min(b[0], x); b[1] = Math.min(b[1], y); b[2] = Math.min(b[2], z);
+            b[3] = Math.max(b[3], x); b[4] = Math.max(b[4], y); b[5] = Math.max(b[5], z);
+        }
+        List<Box> boxes = new ArrayList<>(bySection.size());
+        for (int[] b : bySection.values()) {
+            boxes.add(new Box(b[0] - radius, b[1] - radius, b[2] - radius, b[3] + radius, b[4] + radius, b[5] + radius));
+        }
+        return boxes;
+    }
 
-            try {
-                String s2 = st.toString().toLowerCase();
-                if (s2.contains("silk_touch") || s2.contains("silktouch")) return true;
-            } catch (Throwable e36) {}
-        } catch (Throwable e37) {}
+    /**
+     * (x, y, z) がどれかの座標の ± radius の箱に入っているか。箱はエンティティの当たり判定と交差で判定されていたので、
+     * アイテム・オーブの大きさ分（0.25）だけ広めに見る。調べる座標は高々 (2 * radius + 1)^3 個。
+     */
+    private static boolean nearAny(PackedPosSet members, double x, double y, double z, double radius) {
+        double reach = radius + 0.25d;
+        int x0 = (int) Math.ceil(x - reach), x1 = (int) Math.floor(x + reach);
+        int y0 = (int) Math.ceil(y - reach), y1 = (int) Math.floor(y + reach);
+        int z0 = (int) Math.ceil(z - reach), z1 = (int) Math.floor(z + reach);
+        for (int bx = x0; bx <= x1; bx++) {
+            for (int by = y0; by <= y1; by++) {
+                for (int bz = z0; bz <= z1; bz++) {
+                    if (members.contains(BlockPos.asLong(bx, by, bz))) return true;
+                }
+            }
+        }
         return false;
     }
 
-    private static int estimateXpForBlock(Block block, ServerWorld world) {
-        Random rnd = new Random();
-        String name = "";
-        try { name = block.toString().toLowerCase(); } catch (Throwable e38) {}
-
-        if (name.contains("iron") || name.contains("gold")) return 0;
-        if (name.contains("coal")) return rnd.nextInt(3); // 0-2
-        if (name.contains("diamond")) return 3 + rnd.nextInt(5); // 3-7
-        if (name.contains("lapis")) return 2 + rnd.nextInt(4); // 2-5
-        if (name.contains("quartz")) return 2 + rnd.nextInt(4); // 2-5
-        if (name.contains("redstone")) return 1 + rnd.nextInt(5); // 1-5
-        if (name.contains("emerald")) return 3 + rnd.nextInt(5); // 3-7
+    /** toolStack → メインハンド → オフハンドの順に Silk Touch を調べる（ENCHANTMENTS コンポーネントを読む） */
+    static boolean detectSilkTouch(ServerPlayerEntity serverPlayer, ItemStack toolStack) {
+        try {
+            if (toolStack != null && ToolEnchantments.of(toolStack).hasSilkTouch()) return true;
+            if (ToolEnchantments.of(serverPlayer.getMainHandStack()).hasSilkTouch()) return true;
+            return ToolEnchantments.of(serverPlayer.getOffHandStack()).hasSilkTouch();
+        } catch (Throwable e10) {
+            return false;
+        }
+    }
 
+    /**
+     * バニラと同じ XP 量（Silk Touch の判定は呼び出し側で行う）。
+     * ブロックの IntProvider をワールドの乱数で振り、ツールの block_experience 効果をかける。
+     * XP を落とさないブロック（鉄・金など）や doTileDrops が無効なら 0。
+     */
+    static int computeXp(BlockState state, ServerWorld serverWorld, ItemStack tool) {
         try {
-            Class<?> edClass = Class.forName("net.minecraft.block.ExperienceDroppingBlock");
-            if (edClass.isAssignableFrom(block.getClass())) {
-                return 1 + rnd.nextInt(3);
-            }
-        } catch (Throwable e39) {}
+            IntProvider provider = xpProvider(state.getBlock());
+            if (provider == null) return 0;
+            if (!serverWorld.getGameRules().getBoolean(GameRules.DO_TILE_DROPS)) return 0;
+            int xp = provider.get(serverWorld.getRandom());
+            if (xp <= 0) return 0;
+            return EnchantmentHelper.getBlockExperience(serverWorld, tool != null ? tool : ItemStack.EMPTY, xp);
+        } catch (Throwable e18) {
+            return 0;
+        }
+    }
+
+    /** ブロックが破壊時に落とす XP の幅（落とさなければ null） */
+    private static IntProvider xpProvider(Block block) {
+        if (block instanceof ExperienceDroppingBlock) {
+            return ((ExperienceDroppingBlockAccessor) block).orepicker$getExperienceDropped();
+        }
+        if (block instanceof RedstoneOreBlock) return REDSTONE_XP;
+        return null;
+    }
 
-        return 0;
+    static void grantXp(ServerWorld serverWorld, ServerPlayerEntity serverPlayer, int xp) {
+        try {
+            OrePickerLog.debug("[AutoCollectHandler][DEBUG] awarding xp=" + xp + " to player=" + serverPlayer.getGameProfile().getName());
+            serverPlayer.addExperience(xp);
+            try {
+                serverWorld.playSound(null,
+                        serverPlayer.getX(), serverPlayer.getY(), serverPlayer.getZ(),
+                        SoundEvents.ENTITY_EXPERIENCE_ORB_PICKUP, SoundCategory.PLAYERS, 0.3f, 1.0f);
+            } catch (Throwable e22) {}
+        } catch (Throwable t) {
+            // addExperience が環境で無い等は無視
+        }
     }
 }
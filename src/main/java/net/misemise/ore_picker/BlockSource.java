@@ -0,0 +1,15 @@
+package net.misemise.ore_picker;
+
+import net.minecraft.block.BlockState;
+
+/**
+ * BlockSource - VeinScanner が座標からブロックを読むための口。
+ *
+ * - SectionBlockReader: ワールドのセクションを直接読む（ワールドのスレッド専用）
+ * - SectionSnapshot: サーバースレッドで複製したセクションを読む（ワーカースレッドから読める）
+ *
+ * null を返した座標は「一致しない」扱いになる。
+ */
+public interface BlockSource {
+    BlockState get(long packed);
+}
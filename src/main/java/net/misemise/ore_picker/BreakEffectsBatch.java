@@ -0,0 +1,92 @@
+package net.misemise.ore_picker;
+
+import net.fabricmc.fabric.api.networking.v1.PlayerLookup;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.sound.BlockSoundGroup;
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.util.math.BlockPos;
+import net.misemise.ore_picker.network.BreakEffectsS2CPayload;
+
+import java.util.Arrays;
+
+/**
+ * BreakEffectsBatch - 1 鉱脈分の破壊エフェクトを集め、スライスの終わりごとにまとめて送る。
+ *
+ * - ブロックごとの world event 2001（パーティクル + 音）の代わりに、
+ *   スライスごとに BreakEffectsS2CPayload を 1 つだけ追跡中のプレイヤーへ送る（ブロックが消えるのと同じ tick に出る）
+ * - パーティクルを出す座標はスライスごとに maxParticles 個まで等間隔に間引く
+ * - 破壊音はサーバー側で開始位置にジョブ全体で 1 回だけ鳴らす（最初の flush() で）
+ *
+ * サーバースレッド専用。
+ */
+final class BreakEffectsBatch {
+    private final ServerWorld world;
+    private final int maxParticles;
+
+    private long[] positions = new long[32];
+    private int[] stateIds = new int[32];
+    private int count = 0;
+    private BlockState soundState = null;
+    private boolean soundPlayed = false;
+
+    BreakEffectsBatch(ServerWorld world, int maxParticles) {
+        this.world = world;
+        this.maxParticles = Math.max(0, maxParticles);
+    }
+
+    void add(BlockPos pos, BlockState state) {
+        if (count == positions.length) {
+            positions = Arrays.copyOf(positions, count * 2);
+            stateIds = Arrays.copyOf(stateIds, count * 2);
+        }
+        positions[count] = pos.asLong();
+        stateIds[count] = Block.getRawIdFromState(state);
+        count++;
+        if (soundState == null) soundState = state;
+    }
+
+    /** 集めたエフェクトを送って空にする。origin は音と送信先（追跡チャンク）の基準。音は最初の 1 回だけ */
+    void flush(BlockPos origin) {
+        if (count == 0) return;
+
+        int n = Math.min(count, maxParticles);
+        long[] sampledPos = new long[n];
+        int[] sampledIds = new int[n];
+        for (int i = 0; i < n; i++) {
+            // 鉱脈全体に散らばるよう等間隔に選ぶ
+            int src = (int) ((long) i * count / n);
+            sampledPos[i] = positions[src];
+            sampledIds[i] = stateIds[src];
+        }
+
+        if (n > 0) {
+            BreakEffectsS2CPayload payload = new BreakEffectsS2CPayload(sampledPos, sampledIds);
+            for (ServerPlayerEntity player : PlayerLookup.tracking(world, origin)) {
+                try {
+                    if (ServerPlayNetworking.canSend(player, BreakEffectsS2CPayload.TYPE)) {
+                        ServerPlayNetworking.send(player, payload);
+                    }
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+            }
+        }
+
+        if (!soundPlayed) {
+            soundPlayed = true;
+            try {
+                BlockSoundGroup group = soundState.getSoundGroup();
+                world.playSound(null, origin, group.getBreakSound(), SoundCategory.BLOCKS,
+                        (group.getVolume() + 1.0f) / 2.0f, group.getPitch() * 0.8f);
+            } catch (Throwable ignored) {}
+        }
+
+        OrePickerLog.debug("break effects: " + n + " particles for " + count + " blocks");
+        count = 0;
+        soundState = null;
+    }
+}
@@ -9,25 +9,46 @@ import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * CollectScheduler:
  * - スケジュール時点でプレイヤーのメインハンドツールをコピーして保持します。
- * - processPending() 内で AutoCollect と VeinMiner を呼び出す際にそのツールを渡します。
+ * - processPending() 内で VeinJob を作る際にそのツールを渡します（ジョブ全体でその 1 つを共有）。
+ * - 予約は WHEEL（tick 単位の階層タイミングホイール）に積む。破壊イベントからの予約はその tick の終わりに実行し、
+ *   回収のやり直しやトラッキングの締め（VeinMineTracker）も after() で N tick 後に積む。
+ * - 予約するのは破壊イベント 1 回につき 1 件だけ。壊した各ブロックの回収・XP・トラッキングは VeinJob がまとめて行う。
  *
  * 追加:
  * - サーバー側の安全上限 HARD_VEIN_CAP を導入（クライアントの改竄防止）
  * - Vein 実行前に必ず OreUtils.isOre(state) を確認
  * - 必要に応じて「つるはしのみで実行（requirePickaxeForVein）」のチェックを行う
  * - クリエイティブ適用は ConfigManager.applyInCreative で制御
+ *
+ * 時間分割:
+ * - 一括破壊は VeinJob として ACTIVE に積み、毎 tick ConfigManager.veinTickBudgetMs の範囲で進める
+ * - 予算内に終わらなかったジョブは次の tick に続きから再開する（ジョブごとの所要 tick 数と待ち時間は debug ログに出す）
+ * - 予算はプレイヤーごとのキューにラウンドロビンで配り、各プレイヤーの中では小さい鉱脈を先に進める（VeinJobQueue）。
+ *   破壊イベントの予約は毎 tick 消化される（溜まるのはジョブの方なので、公平さはそちらで取る）
+ * - ブロック数/秒は VeinRateLimiter（プレイヤーごと + 全体のトークンバケット）で制限し、超えたジョブは捨てずに待たせる
+ *
+ * 入口:
+ * - 破壊イベント（BEFORE）からは onVeinBreak() を呼ぶ。ConfigManager.sameTickVeinExecution が無効なら次の tick に予約し、
+ *   有効ならその場でジョブを作って開始ブロックと最初の予算分を壊す（残りは ACTIVE で続ける）
+ * - 同 tick で使った時間はその tick の予算から差し引く（runActiveJobs の締め切りが早まる）
  */
 public final class CollectScheduler {
     private CollectScheduler() {}
 
-    private static final Queue<ScheduledCollect> PENDING = new ConcurrentLinkedQueue<>();
+    // 遅延タスク（サーバースレッドのみで触る。他スレッドからの schedule() はサーバースレッドに回す）
+    private static final TickWheel WHEEL = new TickWheel();
+
+    // ドロップが 1 tick 遅れて出てくる場合に備えて、回収をやり直すまでの tick 数
+    static final int COLLECT_RETRY_TICKS = 1;
+
+    // 実行中の一括破壊ジョブ。プレイヤーごとのキューで公平に進める（サーバースレッドのみで触る）
+    private static final VeinJobQueue ACTIVE = new VeinJobQueue();
 
     private static final class ScheduledCollect {
         final ServerWorld world;
@@ -50,6 +71,12 @@ public final class CollectScheduler {
     // サーバー側のハード上限（安全のためサーバーで強制）
     private static final int HARD_VEIN_CAP = 2048;
 
+    // 1 tick あたりの処理予算の既定値（ミリ秒）
+    private static final double DEFAULT_TICK_BUDGET_MS = 10.0d;
+
+    // この tick に破壊イベント内（同 tick 実行）で使った時間。processPending() の終わりで 0 に戻す
+    private static long sameTickSpentNanos = 0L;
+
     /**
      * 既存互換: ツールキャプチャは内部で試行する
      */
@@ -83,35 +110,227 @@ public final class CollectScheduler {
             } catch (Throwable ignored) {}
         }
 
-        PENDING.add(new ScheduledCollect(world, pos, state, playerUuid, allowVein, toolCopy));
+        ScheduledCollect sc = new ScheduledCollect(world, pos, state, playerUuid, allowVein, toolCopy);
+        MinecraftServer server = world.getServer();
+        if (server != null && !server.isOnThread()) {
+            // ホイールはサーバースレッド専用
+            server.execute(() -> WHEEL.schedule(0, s -> processCollect(sc)));
+        } else {
+            WHEEL.schedule(0, s -> processCollect(sc));
+        }
         try {
             OrePickerLog.debug("queued collect for " + playerUuid + " at " + pos + " allowVein=" + allowVein + " tool=" + (toolCopy != null));
         } catch (Throwable ignored) {}
     }
 
+    /**
+     * 一括破壊の入口（PlayerBlockBreakEvents.BEFORE から、ホールド中に呼ぶ）。
+     * 返り値は BEFORE と同じで、true なら通常の破壊を続行、false ならキャンセル。
+     * toolCopy はイベント時点でコピーしたツール（null 可）。
+     */
+    public static boolean onVeinBreak(ServerWorld world, ServerPlayerEntity player, BlockPos pos, BlockState state, ItemStack toolCopy) {
+        if (world == null || player == null || pos == null) return true;
+
+        boolean sameTick = false;
+        try {
+            sameTick = ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.sameTickVeinExecution;
+        } catch (Throwable ignored) {}
+
+        // 一括破壊の対象でなければ、どちらのモードでもキャンセルせずバニラに任せる
+        try {
+            if (ConfigManager.INSTANCE != null && !ConfigManager.INSTANCE.autoCollectEnabled) return true;
+        } catch (Throwable ignored) {}
+        if (state == null || !veinAllowed(player, state, toolCopy)) return true;
+        // トークンが無い、またはジョブが上限まで溜まっているなら、ジョブを作らず 1 ブロックだけバニラで壊す
+        int allowance = VeinRateLimiter.allowance(player.getUuid());
+        if (allowance <= 0 || ACTIVE.full(player.getUuid())) {
+            OrePickerLog.debug("vein busy or rate limited, vanilla break: " + pos + " for player " + player.getUuid());
+            return true;
+        }
+
+        if (!sameTick) {
+            // allowVein = true so processCollect will start a VeinJob
+            schedule(world, pos, player.getUuid(), state, true, toolCopy);
+            OrePickerLog.debug("Scheduled collect for next tick (VEIN) at: " + pos + " for player " + player.getUuid());
+            return false;
+        }
+
+        long begin = System.nanoTime();
+        VeinJob job = new VeinJob(world, player.getUuid(), pos, state, veinLimit(), toolCopy);
+        // 探索をワーカーに回す場合でも、開始ブロックはこの tick で壊す
+        job.breakStartWhileScanning();
+        boolean done;
+        try {
+            done = job.step(player, begin + Math.max(0L, tickBudgetNanos() - sameTickSpentNanos), allowance);
+        } catch (Throwable t) {
+            t.printStackTrace();
+            done = true;
+        }
+        VeinRateLimiter.consume(job.playerUuid, job.broken());
+        sameTickSpentNanos += System.nanoTime() - begin;
+
+        if (done) {
+            try {
+                OrePickerLog.debug("Vein job finished in break tick: broken=" + job.broken()
+                        + " " + state.getBlock().toString());
+            } catch (Throwable ignored) {}
+        } else {
+            ACTIVE.add(job);
+        }
+        return false;
+    }
+
     /**
      * 外部 (Ore_picker など) から毎 tick 呼ばれることを想定する互換メソッド。
      */
     public static void tick(MinecraftServer server) {
-        processPending();
+        try {
+            VeinShapeCache.tick();
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        try {
+            VeinPrefetcher.tick(server);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        try {
+            VeinRateLimiter.sweep();
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        processPending(server);
     }
 
-    public static void processPending() {
-        int processed = 0;
-        ScheduledCollect sc;
-        while ((sc = PENDING.poll()) != null) {
-            try {
-                processCollect(sc);
-                processed++;
-            } catch (Throwable t) {
-                t.printStackTrace();
+    /** この tick が期限のタスクを実行してから、一括破壊ジョブを進める */
+    public static void processPending(MinecraftServer server) {
+        WHEEL.advance(server);
+        runActiveJobs();
+        sameTickSpentNanos = 0L;
+    }
+
+    /**
+     * サーバー停止時（SERVER_STOPPING、ワールドがまだある間）に呼ぶ。
+     * 実行中のジョブは外周更新だけ済ませて捨て（ドロップと XP はジャーナルから次回払い戻す）、
+     * 積んであるタスクも捨てる。シングルプレイで次に開いたワールドへ前のジョブや予約を持ち込まない。
+     */
+    public static void stop() {
+        try {
+            ACTIVE.stop();
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        WHEEL.clear();
+        sameTickSpentNanos = 0L;
+        VeinMineTracker.clear();
+        VeinPrefetcher.clear();
+    }
+
+    /** ticks 後（サーバー tick の終わり）に task を実行する。サーバースレッド専用 */
+    static TickWheel.Timer after(int ticks, Consumer<MinecraftServer> task) {
+        return WHEEL.schedule(ticks, task);
+    }
+
+    /** WHEEL の現在の tick（遅延の計算に使う） */
+    static long currentTick() {
+        return WHEEL.now();
+    }
+
+    private static long tickBudgetNanos() {
+        double budgetMs = DEFAULT_TICK_BUDGET_MS;
+        try {
+            if (ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.veinTickBudgetMs > 0) {
+                budgetMs = ConfigManager.INSTANCE.veinTickBudgetMs;
             }
+        } catch (Throwable ignored) {}
+        return (long) (budgetMs * 1_000_000L);
+    }
+
+    /**
+     * ACTIVE のジョブを予算内で進める（プレイヤー間はラウンドロビン、プレイヤー内は小さい鉱脈から。VeinJobQueue 参照）。
+     * 予算は回収処理の後から数えるので、どの tick でも先頭のプレイヤーのジョブは最低 1 ブロック進む。
+     * 同じ tick に破壊イベント内で使った分は予算から差し引く。
+     */
+    private static void runActiveJobs() {
+        if (ACTIVE.isEmpty()) return;
+
+        long deadline = System.nanoTime() + Math.max(0L, tickBudgetNanos() - sameTickSpentNanos);
+        ACTIVE.run(deadline);
+    }
+
+    /** 一括破壊の上限（設定 + 設定上の上限 + サーバー側ハード上限）。先読みも同じ値で探索する */
+    static int veinLimit() {
+        // ----- limit (config + cap) -----
+        int configured = (ConfigManager.INSTANCE != null) ? ConfigManager.INSTANCE.maxVeinSize : 64;
+        try {
+            if (ConfigManager.INSTANCE != null) {
+                int cap = ConfigManager.INSTANCE.maxVeinSizeCap;
+                if (cap > 0) configured = Math.min(configured, cap);
+            }
+        } catch (Throwable ignored) {}
+
+        int limit = Math.max(0, configured);
+        // サーバー側ハード上限を適用（クライアント側設定の改竄保護）
+        return Math.min(limit, HARD_VEIN_CAP);
+    }
+
+    /** 鉱石・クリエイティブ・つるはしの条件を満たしていれば true（同 tick / 次 tick のどちらの入口からも使う） */
+    private static boolean veinAllowed(ServerPlayerEntity player, BlockState state, ItemStack toolStack) {
+        // ----- 鉱石判定 -----
+        boolean isOre = false;
+        try { isOre = net.misemise.ore_picker.OreUtils.isOre(state); } catch (Throwable ignored) {}
+        if (!isOre) {
+            // 非鉱石なら Vein を行わない
+            return false;
         }
+
+        // ----- クリエイティブ適用チェック -----
+        boolean applyInCreative = false;
         try {
-            if (processed > 0) {
-                OrePickerLog.debug("processed " + processed + " scheduled collects this tick.");
+            if (ConfigManager.INSTANCE != null) applyInCreative = ConfigManager.INSTANCE.applyInCreative;
+        } catch (Throwable ignored) {}
+        if (!applyInCreative) {
+            try {
+                if (player.interactionManager != null && player.interactionManager.getGameMode().isCreative()) {
+                    return false;
+                }
+            } catch (Throwable ignored) {
+                try {
+                    if (player.isCreative()) return false;
+                } catch (Throwable ignored2) {}
             }
+        }
+
+        // ----- ツール条件（つるはしのみ）チェック -----
+        boolean requirePickaxe = true;
+        try {
+            if (ConfigManager.INSTANCE != null) requirePickaxe = ConfigManager.INSTANCE.requirePickaxeForVein;
         } catch (Throwable ignored) {}
+
+        if (requirePickaxe) {
+            boolean hasPickaxe = false;
+            try {
+                ItemStack usedTool = toolStack != null ? toolStack : player.getMainHandStack();
+                if (usedTool != null) {
+                    try {
+                        if (usedTool.getItem() instanceof PickaxeItem) {
+                            hasPickaxe = true;
+                        } else {
+                            try {
+                                String cls = usedTool.getItem().getClass().getSimpleName().toLowerCase();
+                                if (cls.contains("pickaxe") || cls.contains("pickaxeitem")) hasPickaxe = true;
+                            } catch (Throwable ignored) {}
+                        }
+                    } catch (Throwable ignored) {}
+                }
+            } catch (Throwable ignored) {}
+
+            if (!hasPickaxe) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     private static void processCollect(ScheduledCollect sc) {
@@ -135,91 +354,30 @@ public final class CollectScheduler {
         } catch (Throwable ignored) {}
 
         try {
-            if (sc.state != null && sc.world != null && player != null) {
+            // 一括破壊では開始ブロックもジョブが壊して回収・XP・トラッキングを数えるので、ここでは単発の回収だけ
+            if (!sc.allowVein && sc.state != null && sc.world != null && player != null) {
                 // toolStack を渡して AutoCollect を呼ぶ（AutoCollectHandler 内でも isOre 判定あり）
                 AutoCollectHandler.collectDrops(sc.world, player, sc.pos, sc.state, sc.toolStack);
+                // 遅れて出たドロップを拾い直す（XP とトラッキングは済んでいるので回収だけ）
+                long[] retry = { sc.pos.asLong() };
+                after(COLLECT_RETRY_TICKS, server -> {
+                    ServerPlayerEntity p = server.getPlayerManager().getPlayer(sc.playerUuid);
+                    if (p != null) AutoCollectHandler.collectAround(sc.world, p, retry, 1);
+                });
             }
         } catch (Throwable t) {
             t.printStackTrace();
         }
 
         try {
-            if (sc.allowVein && sc.world != null && player != null) {
-                // ----- 鉱石判定 -----
-                boolean isOre = false;
-                try { isOre = net.misemise.ore_picker.OreUtils.isOre(sc.state); } catch (Throwable ignored) {}
-                if (!isOre) {
-                    // 非鉱石なら Vein を行わない
+            if (sc.allowVein && sc.world != null && player != null && veinAllowed(player, sc.state, sc.toolStack)) {
+                // 破壊イベントから 1 tick の間に上限に達していたら、ジョブを作らない（破壊はキャンセル済みのまま）
+                if (ACTIVE.full(sc.playerUuid)) {
+                    OrePickerLog.debug("vein queue full, dropped: " + sc.pos + " for player " + sc.playerUuid);
                     return;
                 }
-
-                // ----- クリエイティブ適用チェック -----
-                boolean applyInCreative = false;
-                try {
-                    if (ConfigManager.INSTANCE != null) applyInCreative = ConfigManager.INSTANCE.applyInCreative;
-                } catch (Throwable ignored) {}
-                if (!applyInCreative) {
-                    try {
-                        if (player.interactionManager != null && player.interactionManager.getGameMode().isCreative()) {
-                            return;
-                        }
-                    } catch (Throwable ignored) {
-                        try {
-                            if (player.isCreative()) return;
-                        } catch (Throwable ignored2) {}
-                    }
-                }
-
-                // ----- ツール条件（つるはしのみ）チェック -----
-                boolean requirePickaxe = true;
-                try {
-                    if (ConfigManager.INSTANCE != null) requirePickaxe = ConfigManager.INSTANCE.requirePickaxeForVein;
-                } catch (Throwable ignored) {}
-
-                if (requirePickaxe) {
-                    boolean hasPickaxe = false;
-                    try {
-                        ItemStack usedTool = sc.toolStack != null ? sc.toolStack : player.getMainHandStack();
-                        if (usedTool != null) {
-                            try {
-                                if (usedTool.getItem() instanceof PickaxeItem) {
-                                    hasPickaxe = true;
-                                } else {
-                                    try {
-                                        String cls = usedTool.getItem().getClass().getSimpleName().toLowerCase();
-                                        if (cls.contains("pickaxe") || cls.contains("pickaxeitem")) hasPickaxe = true;
-                                    } catch (Throwable ignored) {}
-                                }
-                            } catch (Throwable ignored) {}
-                        }
-                    } catch (Throwable ignored) {}
-
-                    if (!hasPickaxe) {
-                        return;
-                    }
-                }
-
-                // ----- limit (config + cap) -----
-                int configured = (ConfigManager.INSTANCE != null) ? ConfigManager.INSTANCE.maxVeinSize : 64;
-                try {
-                    if (ConfigManager.INSTANCE != null) {
-                        int cap = ConfigManager.INSTANCE.maxVeinSizeCap;
-                        if (cap > 0) configured = Math.min(configured, cap);
-                    }
-                } catch (Throwable ignored) {}
-
-                int limit = Math.max(0, configured);
-                // サーバー側ハード上限を適用（クライアント側設定の改竄保護）
-                limit = Math.min(limit, HARD_VEIN_CAP);
-
-                try {
-                    int broken = VeinMiner.mineAndSchedule(sc.world, player, sc.pos, sc.state, sc.playerUuid, limit, sc.toolStack);
-                    try {
-                        OrePickerLog.debug("Vein broken: " + broken + " " + (sc.state != null ? sc.state.getBlock().toString() : "unknown"));
-                    } catch (Throwable ignored) {}
-                } catch (Throwable t) {
-                    t.printStackTrace();
-                }
+                // 実際の探索・破壊は VeinJob として時間分割で進める
+                ACTIVE.add(new VeinJob(sc.world, sc.playerUuid, sc.pos, sc.state, veinLimit(), sc.toolStack));
             }
         } catch (Throwable ignored) {}
     }
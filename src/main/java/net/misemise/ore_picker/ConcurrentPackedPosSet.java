@@ -0,0 +1,77 @@
+package net.misemise.ore_picker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ConcurrentPackedPosSet - 並列探索用の visited セット（BlockPos.asLong() の long をそのまま持つ）。
+ *
+ * - 線形探索のオープンアドレス法。キーは CAS で空きスロットに入れるだけで、削除も拡張もしない
+ *   （容量は探索上限から見積もり、作成時に固定する）
+ * - 各キーは「順位」を持ち、claim() は小さい方の順位を残す（CAS で min を取る）。
+ *   どのスレッドが先に触っても最後に残る順位は同じなので、誰がその座標を見つけたことにするかが
+ *   スレッド数やタイミングに依存しない
+ * - Long.MAX_VALUE を空きスロット / 未設定の順位の印として使う（PackedPosSet と同じ）
+ */
+final class ConcurrentPackedPosSet {
+    private static final long EMPTY = Long.MAX_VALUE;
+
+    private final AtomicLongArray keys;
+    private final AtomicLongArray ranks;
+    private final int mask;
+
+    ConcurrentPackedPosSet(int expected) {
+        int need = Math.max(16, expected) * 2;
+        int cap = Integer.highestOneBit(need - 1) << 1;
+        keys = new AtomicLongArray(cap);
+        ranks = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) {
+            keys.set(i, EMPTY);
+            ranks.set(i, EMPTY);
+        }
+        mask = cap - 1;
+    }
+
+    /**
+     * key を rank で登録する（既にあれば小さい方の順位を残す）。
+     * 返り値: 登録後にその key が持っている順位（自分の rank と等しければ、今のところ自分が最小）
+     */
+    long claim(long key, long rank) {
+        int i = slot(key);
+        for (int probes = 0; probes <= mask; probes++) {
+            long cur = keys.get(i);
+            if (cur == EMPTY) {
+                if (!keys.compareAndSet(i, EMPTY, key)) {
+                    cur = keys.get(i);
+                } else {
+                    cur = key;
+                }
+            }
+            if (cur == key) {
+                long r;
+                while ((r = ranks.get(i)) > rank) {
+                    if (ranks.compareAndSet(i, r, rank)) return rank;
+                }
+                return r;
+            }
+            i = (i + 1) & mask;
+        }
+        throw new IllegalStateException("ConcurrentPackedPosSet is full");
+    }
+
+    /** key の順位。含まれていなければ Long.MAX_VALUE */
+    long rank(long key) {
+        int i = slot(key);
+        for (int probes = 0; probes <= mask; probes++) {
+            long cur = keys.get(i);
+            if (cur == EMPTY) return EMPTY;
+            if (cur == key) return ranks.get(i);
+            i = (i + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
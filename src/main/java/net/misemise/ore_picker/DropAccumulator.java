@@ -0,0 +1,100 @@
+package net.misemise.ore_picker;
+
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.sound.SoundEvents;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DropAccumulator - 直接インベントリ投入モードで 1 鉱脈分のドロップをまとめる入れ物。
+ *
+ * - 同じアイテム（コンポーネント込みで一致）は 1 つのスタックに合算する（上限個数は気にせず数える）
+ * - deliver() で一括してインベントリへ入れ、入りきらなかった分だけ ItemEntity にする
+ *
+ * 1 鉱脈の種類数はほぼ 1〜3 なので線形探索で十分。
+ */
+final class DropAccumulator {
+    private final List<ItemStack> merged = new ArrayList<>();
+    // 前回 drainRecent() してから足した分（VeinJournal にスライスごとの増分として書く）
+    private final List<ItemStack> recent = new ArrayList<>();
+
+    void add(ItemStack stack) {
+        if (stack == null || stack.isEmpty()) return;
+        mergeInto(merged, stack);
+        mergeInto(recent, stack);
+    }
+
+    private static void mergeInto(List<ItemStack> list, ItemStack stack) {
+        for (ItemStack m : list) {
+            if (ItemStack.areItemsAndComponentsEqual(m, stack)) {
+                m.increment(stack.getCount());
+                return;
+            }
+        }
+        list.add(stack.copy());
+    }
+
+    /** 前回呼んでから足した分を返して空にする（無ければ null） */
+    List<ItemStack> drainRecent() {
+        if (recent.isEmpty()) return null;
+        List<ItemStack> out = new ArrayList<>(recent);
+        recent.clear();
+        return out;
+    }
+
+    boolean isEmpty() {
+        return merged.isEmpty();
+    }
+
+    /**
+     * まとめたドロップを渡す。
+     * player が null（ログアウト済み等）の場合は全量を dropPos に落とす。
+     */
+    void deliver(ServerWorld world, ServerPlayerEntity player, BlockPos dropPos) {
+        if (merged.isEmpty()) return;
+
+        boolean anyInserted = false;
+        for (ItemStack stack : merged) {
+            int before = stack.getCount();
+            if (player != null) {
+                try {
+                    player.getInventory().insertStack(stack);
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+            }
+            if (stack.getCount() < before) anyInserted = true;
+            if (!stack.isEmpty()) spawnOverflow(world, dropPos, stack);
+        }
+        merged.clear();
+
+        if (anyInserted && player != null) {
+            try {
+                world.playSound(null,
+                        player.getX(), player.getY(), player.getZ(),
+                        SoundEvents.ENTITY_ITEM_PICKUP, SoundCategory.PLAYERS, 0.2f, 1.0f);
+            } catch (Throwable ignored) {}
+        }
+    }
+
+    /** 入りきらなかった分。1 スタックの上限を超える分は分割して落とす（保存時のコーデック制約のため） */
+    private static void spawnOverflow(ServerWorld world, BlockPos pos, ItemStack stack) {
+        int max = Math.max(1, stack.getMaxCount());
+        while (!stack.isEmpty()) {
+            ItemStack part = stack.split(max);
+            try {
+                ItemEntity entity = new ItemEntity(world, pos.getX() + 0.5d, pos.getY() + 0.5d, pos.getZ() + 0.5d, part);
+                entity.setToDefaultPickupDelay();
+                world.spawnEntity(entity);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+}
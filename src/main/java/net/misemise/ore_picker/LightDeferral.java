@@ -0,0 +1,29 @@
+package net.misemise.ore_picker;
+
+/**
+ * LightDeferral - 一括除去中だけ WorldChunk.setBlockState の光源再計算キューイングを止めるスイッチ。
+ *
+ * - VeinJob が除去の直前に suspend()、直後に resume() を呼ぶ
+ * - WorldChunkMixin は isSuspended() の間だけ LightingProvider.checkBlock を呼ばない
+ * - 止めた分は VeinJob がスライスの終わりごとに外周の座標だけまとめて checkBlock し直す
+ *   （内側は外周からの伝播で埋まるので個別に積む必要がない。前のスライスで除去した座標に接する位置も外周に含める）
+ *
+ * 停止はそれを掛けたスレッドにだけ効く（他スレッドのチャンク更新には影響しない）。
+ */
+public final class LightDeferral {
+    private LightDeferral() {}
+
+    private static volatile Thread suspendedOn = null;
+
+    static void suspend() {
+        suspendedOn = Thread.currentThread();
+    }
+
+    static void resume() {
+        suspendedOn = null;
+    }
+
+    public static boolean isSuspended() {
+        return suspendedOn == Thread.currentThread();
+    }
+}
@@ -0,0 +1,117 @@
+package net.misemise.ore_picker;
+
+import net.misemise.ore_picker.config.ConfigManager;
+import net.minecraft.block.Block;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.Identifier;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * OreEquivalence - 「同じ鉱脈として繋げてよいブロック」の同値クラス表。
+ *
+ * - ブロックの raw ID を添字にした int[]（値はクラス ID）。起動後の初回利用時と設定リロード時に作り直す
+ * - mergeDifferentOreTypes=false: 全ブロックが自分だけのクラス（従来通り同一ブロックのみ連結）
+ * - oreMergeScope=family: 鉱石の ID から "deepslate_" / "nether_" 接頭辞を除いた名前が同じものを同じクラスにする
+ *   （例: iron_ore と deepslate_iron_ore、gold_ore と deepslate_gold_ore と nether_gold_ore）
+ * - oreMergeScope=all: OreUtils.isOre の鉱石を全て 1 つのクラスにする
+ *
+ * 鉱石でないブロックは常に自分だけのクラス（deepslate_bricks と bricks が繋がったりしない）。
+ * クラス ID は代表ブロックの raw ID なので、マージ無しなら raw ID そのもの。
+ */
+public final class OreEquivalence {
+    private OreEquivalence() {}
+
+    public static final String SCOPE_FAMILY = "family";
+    public static final String SCOPE_ALL = "all";
+
+    private static final String[] VARIANT_PREFIXES = {"deepslate_", "nether_"};
+
+    private static volatile int[] classes = null;
+    private static volatile boolean listening = false;
+
+    /** ブロックの同値クラス ID */
+    public static int classOf(Block block) {
+        int id = Registries.BLOCK.getRawId(block);
+        int[] table = classes;
+        if (table == null || id >= table.length) table = rebuild();
+        return id >= 0 && id < table.length ? table[id] : id;
+    }
+
+    /** a と b が同じ鉱脈として繋がるか */
+    public static boolean same(Block a, Block b) {
+        return a == b || classOf(a) == classOf(b);
+    }
+
+    /** 設定変更時に呼ぶ（次の利用時に作り直される） */
+    public static void invalidate() {
+        classes = null;
+    }
+
+    private static synchronized int[] rebuild() {
+        int[] current = classes;
+        int size = Registries.BLOCK.size();
+        if (current != null && current.length >= size) return current;
+
+        if (!listening) {
+            try {
+                if (ConfigManager.INSTANCE != null) {
+                    ConfigManager.INSTANCE.addChangeListener(OreEquivalence::invalidate);
+                    listening = true;
+                }
+            } catch (Throwable ignored) {}
+        }
+
+        boolean merge = false;
+        String scope = SCOPE_FAMILY;
+        try {
+            if (ConfigManager.INSTANCE != null) {
+                merge = ConfigManager.INSTANCE.mergeDifferentOreTypes;
+                if (ConfigManager.INSTANCE.oreMergeScope != null) scope = ConfigManager.INSTANCE.oreMergeScope.trim().toLowerCase();
+            }
+        } catch (Throwable ignored) {}
+        boolean all = SCOPE_ALL.equals(scope);
+
+        int[] table = new int[size];
+        Map<String, Integer> families = new HashMap<>();
+        int allClass = -1;
+        int merged = 0;
+        for (int id = 0; id < size; id++) {
+            table[id] = id;
+            if (!merge) continue;
+            Block block = Registries.BLOCK.get(id);
+            boolean ore = false;
+            try {
+                ore = OreUtils.isOre(block.getDefaultState());
+            } catch (Throwable ignored) {}
+            if (!ore) continue;
+
+            if (all) {
+                if (allClass < 0) allClass = id;
+                table[id] = allClass;
+            } else {
+                Identifier key = Registries.BLOCK.getId(block);
+                Integer rep = families.putIfAbsent(familyName(key), id);
+                if (rep != null) table[id] = rep;
+            }
+            if (table[id] != id) merged++;
+        }
+
+        classes = table;
+        OrePickerLog.debug("ore equivalence table rebuilt: " + size + " blocks, merge=" + merge
+                + ", scope=" + scope + ", merged=" + merged);
+        return table;
+    }
+
+    private static String familyName(Identifier id) {
+        String path = id.getPath();
+        for (String prefix : VARIANT_PREFIXES) {
+            if (path.startsWith(prefix)) {
+                path = path.substring(prefix.length());
+                break;
+            }
+        }
+        return id.getNamespace() + ":" + path;
+    }
+}
@@ -11,7 +11,7 @@ import net.misemise.ore_picker.config.ConfigManager;
 public final class OrePickerLog {
     private OrePickerLog() {}
 
-    private static boolean debugEnabled() {
+    static boolean debugEnabled() {
         try {
             return ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.debug;
         } catch (Throwable t) {
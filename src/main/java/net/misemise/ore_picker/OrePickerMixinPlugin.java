@@ -0,0 +1,70 @@
+package net.misemise.ore_picker;
+
+import net.misemise.ore_picker.config.ConfigManager;
+import org.objectweb.asm.tree.ClassNode;
+import org.spongepowered.asm.mixin.extensibility.IMixinConfigPlugin;
+import org.spongepowered.asm.mixin.extensibility.IMixinInfo;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * OrePickerMixinPlugin - 設定で使わない機能のフックを入れないための mixin プラグイン。
+ *
+ * - ServerWorldMixin（ブロック変化ごとの VeinShapeCache への通知）は、起動時に veinShapeCache か
+ *   prefetchWhileHolding が有効なときだけ入れる。キャッシュを使わないサーバーでは毎回の通知そのものが無くなる
+ * - 入れたかどうかは shapeCacheHooked() で引ける。入れていなければキャッシュは途中で有効にしても使わない
+ *   （無効化の通知が来ないため。有効にするには再起動が要る）
+ *
+ * 設定はここで最初に読む（ConfigManager は Minecraft のクラスに依存しないので、mixin の適用前に読んでよい）。
+ */
+public final class OrePickerMixinPlugin implements IMixinConfigPlugin {
+    private static volatile boolean shapeCacheHooked = false;
+
+    /** ServerWorldMixin を入れたか */
+    static boolean shapeCacheHooked() {
+        return shapeCacheHooked;
+    }
+
+    @Override
+    public void onLoad(String mixinPackage) {
+        try {
+            ConfigManager.load();
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    @Override
+    public String getRefMapperConfig() {
+        return null;
+    }
+
+    @Override
+    public boolean shouldApplyMixin(String targetClassName, String mixinClassName) {
+        if (mixinClassName.endsWith(".ServerWorldMixin")) {
+            boolean apply = false;
+            try {
+                ConfigManager c = ConfigManager.INSTANCE;
+                apply = c != null && (c.veinShapeCache || c.prefetchWhileHolding);
+            } catch (Throwable ignored) {}
+            shapeCacheHooked = apply;
+            return apply;
+        }
+        return true;
+    }
+
+    @Override
+    public void acceptTargets(Set<String> myTargets, Set<String> otherTargets) {}
+
+    @Override
+    public List<String> getMixins() {
+        return null;
+    }
+
+    @Override
+    public void preApply(String targetClassName, ClassNode targetClass, String mixinClassName, IMixinInfo mixinInfo) {}
+
+    @Override
+    public void postApply(String targetClassName, ClassNode targetClass, String mixinClassName, IMixinInfo mixinInfo) {}
+}
@@ -14,10 +14,13 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.event.player.PlayerBlockBreakEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 
+import net.misemise.ore_picker.network.BreakEffectsS2CPayload;
 import net.misemise.ore_picker.network.HoldC2SPayload;
 import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 
 import net.minecraft.text.Text;
@@ -43,6 +46,7 @@ public class Ore_picker implements ModInitializer {
         try {
             PayloadTypeRegistry.playC2S().register(HoldC2SPayload.TYPE, HoldC2SPayload.CODEC);
             OrePickerLog.info("Registered HoldC2SPayload codec for " + HoldC2SPayload.ID);
+            PayloadTypeRegistry.playS2C().register(BreakEffectsS2CPayload.TYPE, BreakEffectsS2CPayload.CODEC);
         } catch (Throwable t) {
             OrePickerLog.error("Failed to register codec (server):", t);
         }
@@ -86,7 +90,7 @@ public class Ore_picker implements ModInitializer {
             OrePickerLog.error("Failed to register payload receiver:", t);
         }
 
-        // register block-break BEFORE -> allow cancellation & schedule collect
+        // register block-break BEFORE -> allow cancellation & start vein (CollectScheduler.onVeinBreak)
         PlayerBlockBreakEvents.BEFORE.register((World world, net.minecraft.entity.player.PlayerEntity player, BlockPos pos, BlockState state, net.minecraft.block.entity.BlockEntity blockEntity) -> {
             try {
                 // server-only behaviour
@@ -111,19 +115,15 @@ public class Ore_picker implements ModInitializer {
                     return true; // 通常の破壊を続行
                 }
 
-                // schedule for next tick (safe: copy toolstack)
+                // copy toolstack at break time (safe for next-tick scheduling)
                 ItemStack toolCopy = null;
                 try {
                     ItemStack main = serverPlayer.getMainHandStack();
                     if (main != null) toolCopy = main.copy();
                 } catch (Throwable ignored) {}
 
-                // allowVein = true so CollectScheduler will run VeinMiner
-                CollectScheduler.schedule(serverWorld, pos, uuid, state, true, toolCopy);
-                OrePickerLog.debug("Scheduled collect for next tick (VEIN) at: " + pos + " for player " + uuid);
-
-                // cancel vanilla handling (we perform vein mining instead)
-                return false;
+                // next tick or same tick depending on config; false cancels vanilla handling (we perform vein mining instead)
+                return CollectScheduler.onVeinBreak(serverWorld, serverPlayer, pos, state, toolCopy);
             } catch (Throwable t) {
                 t.printStackTrace();
                 return true;
@@ -137,15 +137,54 @@ public class Ore_picker implements ModInitializer {
             } catch (Throwable t) {
                 t.printStackTrace();
             }
-            // keep any other server-tick tasks here (VeinMineTracker timeouts etc)
+            // VeinMineTracker の締めは CollectScheduler のタイミングホイールで行う（毎 tick の見回りは不要）
+        });
+
+        // ジョブのジャーナルはワールドごと（前回渡せなかったドロップはプレイヤーが入ったときに払い戻す）
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
             try {
-                VeinMineTracker.handleTimeouts(uuid -> {
-                    for (ServerPlayerEntity p : server.getPlayerManager().getPlayerList()) {
-                        if (p.getUuid().equals(uuid)) return p;
-                    }
-                    return null;
-                });
-            } catch (Throwable ignored) {}
+                VeinJournal.open(server);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        });
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
+            try {
+                VeinJournal.onJoin(handler.player);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        });
+
+        // 実行中のジョブは、ワールドが残っている停止開始時に外周の更新だけ済ませて捨てる（ジャーナルは閉じる前なので記録は前のワールドに残る）
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+            try {
+                CollectScheduler.stop();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        });
+
+        // 探索ワーカーとキャッシュはサーバー停止時に片付ける（シングルプレイでワールドを出入りしても残らないように）
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            try {
+                VeinScanExecutor.shutdown();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+            // 積んである記録を書き終えてから閉じる（終わっていないジョブは次回払い戻し）
+            try {
+                VeinJournal.close();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+            // 別のワールドを開いたときに前のワールドの形を使わない
+            try {
+                VeinShapeCache.clear();
+                VeinRateLimiter.clear();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
         });
 
         OrePickerLog.info("server initialization complete");
@@ -0,0 +1,71 @@
+package net.misemise.ore_picker;
+
+/**
+ * PackedPosQueue - BlockPos.asLong() 値用のリングバッファ FIFO。
+ *
+ * - 容量は 2 の冪。満杯になったら倍に拡張する（通常は limit から見積もった初期容量で足りる）
+ * - スレッドセーフではない（PackedPosSet と同じくスレッドごとに使い回す）
+ */
+final class PackedPosQueue {
+    private long[] buf;
+    private int mask;
+    private int head;
+    private int tail;
+
+    PackedPosQueue(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    void reset(int expected) {
+        int cap = capacityFor(expected);
+        if (cap > buf.length) allocate(cap);
+        head = 0;
+        tail = 0;
+    }
+
+    void add(long v) {
+        buf[tail] = v;
+        tail = (tail + 1) & mask;
+        if (tail == head) grow();
+    }
+
+    /** 呼び出し側で isEmpty() を確認してから呼ぶこと。 */
+    long poll() {
+        long v = buf[head];
+        head = (head + 1) & mask;
+        return v;
+    }
+
+    boolean isEmpty() {
+        return head == tail;
+    }
+
+    int size() {
+        return (tail - head) & mask;
+    }
+
+    private void grow() {
+        // tail == head (満杯) の状態から head 起点で並べ直す
+        long[] old = buf;
+        long[] next = new long[old.length << 1];
+        int firstPart = old.length - head;
+        System.arraycopy(old, head, next, 0, firstPart);
+        System.arraycopy(old, 0, next, firstPart, head);
+        buf = next;
+        mask = next.length - 1;
+        head = 0;
+        tail = old.length;
+    }
+
+    private void allocate(int cap) {
+        buf = new long[cap];
+        mask = cap - 1;
+        head = 0;
+        tail = 0;
+    }
+
+    private static int capacityFor(int expected) {
+        int need = Math.max(16, expected);
+        return Integer.highestOneBit(need - 1) << 1;
+    }
+}
@@ -0,0 +1,91 @@
+package net.misemise.ore_picker;
+
+import java.util.Arrays;
+
+/**
+ * PackedPosSet - BlockPos.asLong() で詰めた座標用のオープンアドレス法ハッシュセット。
+ *
+ * - BlockPos をボックス化せずに long のまま保持する（探索ループでのアロケーションを無くすため）
+ * - 線形探索 + 2 の冪サイズ、負荷率 0.5 を超えたら拡張
+ * - Long.MAX_VALUE を空きスロットの印として使う（ワールド座標としては出現しない値）
+ *
+ * スレッドセーフではない。VeinScanner 側でスレッドごとに使い回す前提。
+ */
+final class PackedPosSet {
+    private static final long EMPTY = Long.MAX_VALUE;
+
+    private long[] table;
+    private int mask;
+    private int size;
+
+    PackedPosSet(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    /** 中身を空にする。expected が現在の容量に収まらなければ作り直す。 */
+    void reset(int expected) {
+        int cap = capacityFor(expected);
+        if (cap > table.length) {
+            allocate(cap);
+        } else if (size > 0) {
+            Arrays.fill(table, EMPTY);
+            size = 0;
+        }
+    }
+
+    /** 追加できたら true、既に含まれていたら false。 */
+    boolean add(long key) {
+        int i = mix(key) & mask;
+        long cur;
+        while ((cur = table[i]) != EMPTY) {
+            if (cur == key) return false;
+            i = (i + 1) & mask;
+        }
+        table[i] = key;
+        if (++size * 2 > table.length) grow();
+        return true;
+    }
+
+    boolean contains(long key) {
+        int i = mix(key) & mask;
+        long cur;
+        while ((cur = table[i]) != EMPTY) {
+            if (cur == key) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] old = table;
+        allocate(old.length << 1);
+        for (long k : old) {
+            if (k == EMPTY) continue;
+            int i = mix(k) & mask;
+            while (table[i] != EMPTY) i = (i + 1) & mask;
+            table[i] = k;
+            size++;
+        }
+    }
+
+    private void allocate(int cap) {
+        table = new long[cap];
+        Arrays.fill(table, EMPTY);
+        mask = cap - 1;
+        size = 0;
+    }
+
+    private static int capacityFor(int expected) {
+        int need = Math.max(16, expected) * 2;
+        return Integer.highestOneBit(need - 1) << 1;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
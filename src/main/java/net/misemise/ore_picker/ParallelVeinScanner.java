@@ -0,0 +1,191 @@
+package net.misemise.ore_picker;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParallelVeinScanner - 巨大な鉱脈向けの、階層同期（レベルごと）の並列 BFS。
+ *
+ * 1 レベル分の処理:
+ * 1) 並列: フロンティアの各親について隣の座標を ConcurrentPackedPosSet に「順位」付きで登録し、
+ *    勝っている候補だけスナップショットから state を読む（読み取りがこの探索の重い部分）
+ *    順位 = (レベル, 親のフロンティア内の位置, オフセット番号) なので、逐次 BFS で先に見つける親ほど小さい
+ * 2) 逐次: 親の順 → オフセットの順に候補を並べ、最終的に自分の順位が残っている候補だけ次のフロンティアにする
+ *
+ * 最後に残る順位はスレッドの実行順に依存しないため、結果（座標の集合と並び順）は
+ * VeinScanner.scan を同じスナップショットで回した場合と一致し、コア数によって変わらない。
+ *
+ * 小さいフロンティアは手順 1 もその場で回す（分割のオーバーヘッドの方が大きいため）。
+ */
+final class ParallelVeinScanner {
+    private ParallelVeinScanner() {}
+
+    private static final long EMPTY = Long.MAX_VALUE;
+    // これより小さいフロンティアは分割せずに処理する
+    private static final int MIN_PARALLEL_FRONTIER = 64;
+    // 1 タスクが受け持つ親の数
+    private static final int PARENTS_PER_TASK = 32;
+    private static final int LEVEL_SHIFT = 40;
+
+    static VeinScanner.Result scan(ForkJoinPool pool, SectionSnapshot snapshot, BlockPos start, Block target,
+                                   int limit, int maxManhattan, int connectivity) {
+        if (snapshot == null || start == null || target == null || limit <= 0) return VeinScanner.Result.EMPTY;
+        VeinScanner.Offsets o = VeinScanner.offsets(connectivity);
+        int n = o.size();
+
+        ConcurrentPackedPosSet visited = new ConcurrentPackedPosSet(limit * n + 1);
+        long[] found = new long[Math.min(limit, 256)];
+        BlockState[] foundStates = new BlockState[found.length];
+        int count = 0;
+
+        long startKey = start.asLong();
+        visited.claim(startKey, 0L);
+        long[] frontier = {startKey};
+        BlockState startState = snapshot.peek(startKey);
+        if (startState == null) snapshot.noteMissing(startKey);
+        BlockState[] frontierStates = {startState};
+        int frontierSize = 1;
+
+        int targetClass = OreEquivalence.classOf(target);
+        Block lastBlock = null;
+        boolean lastMatch = false;
+
+        int level = 0;
+        while (frontierSize > 0 && count < limit) {
+            // フロンティアの一致判定（逐次 BFS の取り出し順と同じ）
+            boolean[] expand = new boolean[frontierSize];
+            for (int i = 0; i < frontierSize && count < limit; i++) {
+                BlockState bs = frontierStates[i];
+                boolean match = false;
+                if (bs != null) {
+                    Block block = bs.getBlock();
+                    if (block != lastBlock) {
+                        lastBlock = block;
+                        lastMatch = block == target || OreEquivalence.classOf(block) == targetClass;
+                    }
+                    match = lastMatch;
+                }
+                if (match) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, Math.min(limit, count * 2));
+                        foundStates = Arrays.copyOf(foundStates, found.length);
+                    }
+                    foundStates[count] = bs;
+                    found[count++] = frontier[i];
+                }
+                // 開始ブロックだけは一致しなくても周囲を探す
+                expand[i] = match || level == 0;
+            }
+            if (count >= limit) break;
+
+            // 1) 隣の登録と読み取り（並列）
+            long[] cand = new long[frontierSize * n];
+            BlockState[] candStates = new BlockState[cand.length];
+            Expand task = new Expand(snapshot, visited, o, start, maxManhattan, level + 1,
+                    frontier, expand, cand, candStates, 0, frontierSize);
+            if (frontierSize >= MIN_PARALLEL_FRONTIER && pool != null) {
+                pool.invoke(task);
+            } else {
+                task.compute();
+            }
+
+            // 2) 順位が残っている候補だけを親の順に並べる（逐次）
+            long levelBase = (long) (level + 1) << LEVEL_SHIFT;
+            int next = 0;
+            for (int j = 0; j < cand.length; j++) {
+                long key = cand[j];
+                if (key == EMPTY) continue;
+                if (visited.rank(key) != (levelBase | j)) continue;
+                if (candStates[j] == null) snapshot.noteMissing(key);
+                cand[next] = key;
+                candStates[next] = candStates[j];
+                next++;
+            }
+            frontier = cand;
+            frontierStates = candStates;
+            frontierSize = next;
+            level++;
+        }
+
+        return new VeinScanner.Result(Arrays.copyOf(found, count), Arrays.copyOf(foundStates, count));
+    }
+
+    /** 親の範囲 [from, to) の隣を登録して読む */
+    private static final class Expand extends RecursiveAction {
+        private final SectionSnapshot snapshot;
+        private final ConcurrentPackedPosSet visited;
+        private final VeinScanner.Offsets o;
+        private final BlockPos start;
+        private final int maxManhattan;
+        private final int nextLevel;
+        private final long[] frontier;
+        private final boolean[] expand;
+        private final long[] cand;
+        private final BlockState[] candStates;
+        private final int from, to;
+
+        Expand(SectionSnapshot snapshot, ConcurrentPackedPosSet visited, VeinScanner.Offsets o, BlockPos start,
+               int maxManhattan, int nextLevel, long[] frontier, boolean[] expand,
+               long[] cand, BlockState[] candStates, int from, int to) {
+            this.snapshot = snapshot;
+            this.visited = visited;
+            this.o = o;
+            this.start = start;
+            this.maxManhattan = maxManhattan;
+            this.nextLevel = nextLevel;
+            this.frontier = frontier;
+            this.expand = expand;
+            this.cand = cand;
+            this.candStates = candStates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARENTS_PER_TASK && getPool() != null) {
+                int mid = (from + to) >>> 1;
+                invokeAll(
+                        new Expand(snapshot, visited, o, start, maxManhattan, nextLevel, frontier, expand, cand, candStates, from, mid),
+                        new Expand(snapshot, visited, o, start, maxManhattan, nextLevel, frontier, expand, cand, candStates, mid, to));
+                return;
+            }
+
+            int[] dx = o.dx, dy = o.dy, dz = o.dz;
+            int n = dx.length;
+            int sx = start.getX(), sy = start.getY(), sz = start.getZ();
+            long levelBase = (long) nextLevel << LEVEL_SHIFT;
+            for (int i = from; i < to; i++) {
+                int base = i * n;
+                if (!expand[i]) {
+                    Arrays.fill(cand, base, base + n, EMPTY);
+                    continue;
+                }
+                long key = frontier[i];
+                int x = BlockPos.unpackLongX(key), y = BlockPos.unpackLongY(key), z = BlockPos.unpackLongZ(key);
+                for (int d = 0; d < n; d++) {
+                    int j = base + d;
+                    int nx = x + dx[d], ny = y + dy[d], nz = z + dz[d];
+                    if (maxManhattan > 0 && Math.abs(nx - sx) + Math.abs(ny - sy) + Math.abs(nz - sz) > maxManhattan) {
+                        cand[j] = EMPTY;
+                        continue;
+                    }
+                    long nk = BlockPos.asLong(nx, ny, nz);
+                    long rank = levelBase | j;
+                    if (visited.claim(nk, rank) != rank) {
+                        // 既に前のレベルか、より前の親が持っている
+                        cand[j] = EMPTY;
+                        continue;
+                    }
+                    cand[j] = nk;
+                    candStates[j] = snapshot.peek(nk);
+                }
+            }
+        }
+    }
+}
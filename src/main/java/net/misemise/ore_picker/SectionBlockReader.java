@@ -0,0 +1,69 @@
+package net.misemise.ore_picker;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * SectionBlockReader - 探索 1 回分だけ使うブロック読み取りアクセサ。
+ *
+ * - 直前に触った WorldChunk / ChunkSection を保持し、同じセクション内の読み取りは
+ *   ChunkManager を経由せずパレットからローカル座標で直接引く
+ * - 鉱脈は 1〜2 セクションに収まることがほとんどなので、チャンク解決はほぼ最初の 1 回で済む
+ * - 高さ範囲外や空セクションは AIR として扱う
+ * - 読み込み済みのチャンクしか読まない（getWorldChunk(x, z, false)）。未読み込みのチャンクは AIR、
+ *   つまり探索にとっては壁になる（探索が原因で同期的なチャンク読み込み・生成を起こさない）
+ *
+ * スレッドセーフではない。ワールドのスレッド（サーバー/クライアント）上で探索ごとに生成して使う。
+ */
+public final class SectionBlockReader implements BlockSource {
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+
+    private final World world;
+    private final int bottomSectionY;
+    private final int sectionCount;
+
+    private int chunkX = Integer.MIN_VALUE;
+    private int chunkZ = Integer.MIN_VALUE;
+    private ChunkSection[] sections = null;
+
+    private int sectionY = Integer.MIN_VALUE;
+    private ChunkSection section = null;
+
+    public SectionBlockReader(World world) {
+        this.world = world;
+        this.bottomSectionY = world.getBottomSectionCoord();
+        this.sectionCount = world.countVerticalSections();
+    }
+
+    public World world() {
+        return world;
+    }
+
+    @Override
+    public BlockState get(long packed) {
+        return get(BlockPos.unpackLongX(packed), BlockPos.unpackLongY(packed), BlockPos.unpackLongZ(packed));
+    }
+
+    public BlockState get(int x, int y, int z) {
+        int cx = x >> 4, cy = y >> 4, cz = z >> 4;
+        if (cx != chunkX || cz != chunkZ) {
+            WorldChunk chunk = world.getChunkManager().getWorldChunk(cx, cz, false);
+            sections = chunk != null ? chunk.getSectionArray() : null;
+            chunkX = cx;
+            chunkZ = cz;
+            sectionY = Integer.MIN_VALUE;
+        }
+        if (cy != sectionY) {
+            int index = cy - bottomSectionY;
+            section = (sections != null && index >= 0 && index < sectionCount && index < sections.length) ? sections[index] : null;
+            sectionY = cy;
+        }
+        if (section == null || section.isEmpty()) return AIR;
+        return section.getBlockState(ChunkSectionPos.getLocalCoord(x), ChunkSectionPos.getLocalCoord(y), ChunkSectionPos.getLocalCoord(z));
+    }
+}
@@ -0,0 +1,93 @@
+package net.misemise.ore_picker;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.shorts.ShortOpenHashSet;
+import it.unimi.dsi.fastutil.shorts.ShortSet;
+import net.fabricmc.fabric.api.networking.v1.PlayerLookup;
+import net.minecraft.network.packet.Packet;
+import net.minecraft.network.packet.s2c.play.BlockUpdateS2CPacket;
+import net.minecraft.network.packet.s2c.play.ChunkDeltaUpdateS2CPacket;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * SectionDeltaBatcher - 一括除去で変えた座標をチャンクセクション単位でまとめ、
+ * flush() でセクションごとに ChunkDeltaUpdateS2CPacket を 1 つだけ送る。
+ *
+ * - 対象の除去は defer()〜resume() の間に行い、ServerChunkManagerMixin がその座標の markForUpdate だけを止める
+ *   （ChunkHolder 側からはブロック更新が送られない）。NOTIFY_LISTENERS 自体は付けたままなので、
+ *   ServerWorld.updateListeners の経路探索キャッシュの無効化や Mob の経路の再計算は通常通り行われる
+ * - 送信先はそのチャンクを追跡しているプレイヤー（PlayerLookup.tracking）
+ * - 1 座標だけのセクションは BlockUpdateS2CPacket で送る（バニラと同じ使い分け）
+ *
+ * サーバースレッド専用。
+ */
+public final class SectionDeltaBatcher {
+    // markForUpdate を止めているスレッドと座標（その 1 座標の setBlockState の間だけ）
+    private static volatile Thread deferringOn = null;
+    private static long deferredPos = 0L;
+
+    private final ServerWorld world;
+    private final Long2ObjectLinkedOpenHashMap<ShortSet> bySection = new Long2ObjectLinkedOpenHashMap<>();
+
+    SectionDeltaBatcher(ServerWorld world) {
+        this.world = world;
+    }
+
+    static void defer(BlockPos pos) {
+        deferredPos = pos.asLong();
+        deferringOn = Thread.currentThread();
+    }
+
+    static void resume() {
+        deferringOn = null;
+    }
+
+    /** ServerChunkManagerMixin から呼ばれる。pos のクライアント向けの更新をこちらでまとめて送るなら true */
+    public static boolean isDeferred(BlockPos pos) {
+        return deferringOn == Thread.currentThread() && pos.asLong() == deferredPos;
+    }
+
+    void add(BlockPos pos) {
+        long key = ChunkSectionPos.toLong(pos);
+        ShortSet set = bySection.get(key);
+        if (set == null) {
+            set = new ShortOpenHashSet();
+            bySection.put(key, set);
+        }
+        set.add(ChunkSectionPos.packLocal(pos));
+    }
+
+    /** 溜めた変更をセクションごとに送って空にする */
+    void flush() {
+        if (bySection.isEmpty()) return;
+        int packets = 0;
+        for (Long2ObjectLinkedOpenHashMap.Entry<ShortSet> e : bySection.long2ObjectEntrySet()) {
+            ShortSet set = e.getValue();
+            if (set.isEmpty()) continue;
+            ChunkSectionPos sectionPos = ChunkSectionPos.from(e.getLongKey());
+            try {
+                Packet<?> packet;
+                if (set.size() == 1) {
+                    packet = new BlockUpdateS2CPacket(world, sectionPos.unpackBlockPos(set.iterator().nextShort()));
+                } else {
+                    WorldChunk chunk = world.getChunk(sectionPos.getSectionX(), sectionPos.getSectionZ());
+                    ChunkSection section = chunk.getSection(world.sectionCoordToIndex(sectionPos.getSectionY()));
+                    packet = new ChunkDeltaUpdateS2CPacket(sectionPos, set, section);
+                }
+                for (ServerPlayerEntity player : PlayerLookup.tracking(world, sectionPos.toChunkPos())) {
+                    player.networkHandler.sendPacket(packet);
+                }
+                packets++;
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+        OrePickerLog.debug("section delta flush: " + packets + " packets for " + bySection.size() + " sections");
+        bySection.clear();
+    }
+}
@@ -0,0 +1,146 @@
+package net.misemise.ore_picker;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * SectionSnapshot - サーバースレッドで複製したチャンクセクションの読み取り専用スナップショット。
+ *
+ * - capture() / grow() はサーバースレッドで呼び、各セクションの PalettedContainer を copy() して持つ
+ * - get() はワーカースレッドから呼んでよい（複製なので誰も書き換えない）
+ * - 複製していないセクションを読むと null（不一致扱い）を返し、そのセクションを missing に記録する。
+ *   探索後に missing が残っていれば、サーバースレッドで grow() してから探索し直す
+ *
+ * 高さ範囲外と空セクション、読み込まれていないチャンクのセクションは AIR（読み込み済みのチャンクしか複製しない）。1 回の探索中に get() を呼ぶのは 1 スレッドだけ。
+ * 複数スレッドから同時に読む並列探索では、キャッシュも missing の記録もしない peek() を使い、
+ * 足りなかった座標は後から 1 スレッドで noteMissing() する。
+ */
+public final class SectionSnapshot implements BlockSource {
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+
+    private final int bottomSectionY;
+    private final int topSectionY;
+    // セクション座標（ChunkSectionPos.asLong）→ 複製したコンテナ。空セクションは null を値に持つ
+    private final Long2ObjectOpenHashMap<PalettedContainer<BlockState>> sections = new Long2ObjectOpenHashMap<>();
+    private final LongOpenHashSet missing = new LongOpenHashSet();
+
+    // 直前に読んだセクション（ほとんどの読み取りは同じセクションに続く）
+    private long lastKey = Long.MIN_VALUE;
+    private PalettedContainer<BlockState> last = null;
+    private boolean lastPresent = false;
+
+    private SectionSnapshot(World world) {
+        this.bottomSectionY = world.getBottomSectionCoord();
+        this.topSectionY = bottomSectionY + world.countVerticalSections() - 1;
+    }
+
+    /** start を含むセクションと、その周囲 radius セクション分を複製する（サーバースレッド専用） */
+    public static SectionSnapshot capture(World world, BlockPos start, int radius) {
+        SectionSnapshot snapshot = new SectionSnapshot(world);
+        int sx = start.getX() >> 4, sy = start.getY() >> 4, sz = start.getZ() >> 4;
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                for (int dy = -radius; dy <= radius; dy++) {
+                    snapshot.copySection(world, sx + dx, sy + dy, sz + dz);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /** 前回の探索で足りなかったセクションを複製して足す（サーバースレッド専用）。足したセクション数を返す */
+    public int grow(World world) {
+        int added = 0;
+        for (long key : missing) {
+            if (sections.containsKey(key)) continue;
+            copySection(world, ChunkSectionPos.unpackX(key), ChunkSectionPos.unpackY(key), ChunkSectionPos.unpackZ(key));
+            added++;
+        }
+        missing.clear();
+        lastKey = Long.MIN_VALUE;
+        return added;
+    }
+
+    private void copySection(World world, int cx, int cy, int cz) {
+        if (cy < bottomSectionY || cy > topSectionY) return;
+        long key = ChunkSectionPos.asLong(cx, cy, cz);
+        PalettedContainer<BlockState> copy = null;
+        try {
+            WorldChunk chunk = world.getChunkManager().getWorldChunk(cx, cz, false);
+            if (chunk != null) {
+                ChunkSection[] array = chunk.getSectionArray();
+                int index = cy - bottomSectionY;
+                if (index >= 0 && index < array.length) {
+                    ChunkSection section = array[index];
+                    if (section != null && !section.isEmpty()) copy = section.getBlockStateContainer().copy();
+                }
+            }
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        sections.put(key, copy);
+    }
+
+    public boolean hasMissing() {
+        return !missing.isEmpty();
+    }
+
+    public LongSet missing() {
+        return missing;
+    }
+
+    /** 複製したセクションの座標（ChunkSectionPos.asLong） */
+    public long[] sectionKeys() {
+        return sections.keySet().toLongArray();
+    }
+
+    public int sectionCount() {
+        return sections.size();
+    }
+
+    /**
+     * get() と同じだが、直前セクションのキャッシュも missing の記録もしない（複数スレッドから同時に呼べる）。
+     * 複製していないセクションなら null。
+     */
+    BlockState peek(long packed) {
+        int x = BlockPos.unpackLongX(packed), y = BlockPos.unpackLongY(packed), z = BlockPos.unpackLongZ(packed);
+        int cy = y >> 4;
+        if (cy < bottomSectionY || cy > topSectionY) return AIR;
+        long key = ChunkSectionPos.asLong(x >> 4, cy, z >> 4);
+        PalettedContainer<BlockState> container = sections.get(key);
+        if (container == null) return sections.containsKey(key) ? AIR : null;
+        return container.get(ChunkSectionPos.getLocalCoord(x), ChunkSectionPos.getLocalCoord(y), ChunkSectionPos.getLocalCoord(z));
+    }
+
+    /** peek() で null だった座標のセクションを missing に記録する */
+    void noteMissing(long packed) {
+        missing.add(ChunkSectionPos.asLong(BlockPos.unpackLongX(packed) >> 4, BlockPos.unpackLongY(packed) >> 4, BlockPos.unpackLongZ(packed) >> 4));
+    }
+
+    @Override
+    public BlockState get(long packed) {
+        int x = BlockPos.unpackLongX(packed), y = BlockPos.unpackLongY(packed), z = BlockPos.unpackLongZ(packed);
+        int cy = y >> 4;
+        if (cy < bottomSectionY || cy > topSectionY) return AIR;
+
+        long key = ChunkSectionPos.asLong(x >> 4, cy, z >> 4);
+        if (key != lastKey) {
+            lastKey = key;
+            lastPresent = sections.containsKey(key);
+            last = lastPresent ? sections.get(key) : null;
+            if (!lastPresent) missing.add(key);
+        }
+        if (!lastPresent) return null;
+        if (last == null) return AIR;
+        return last.get(ChunkSectionPos.getLocalCoord(x), ChunkSectionPos.getLocalCoord(y), ChunkSectionPos.getLocalCoord(z));
+    }
+}
@@ -0,0 +1,131 @@
+package net.misemise.ore_picker;
+
+import net.minecraft.server.MinecraftServer;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * TickWheel - tick 単位の階層タイミングホイール（N tick 後に実行するタスクの入れ物）。
+ *
+ * - 64 スロット × 4 段。段 k のスロットは 64^k tick 分をまとめて持つ（64^4 tick ≒ 9.7 日先まで。それ以上は最上段の端に置き、降りてきた時点で入れ直す）
+ * - schedule() は期限に応じた段のスロットの単方向リストの先頭に繋ぐだけ（O(1)）
+ * - advance() は現在 tick のスロットを丸ごと外して実行する（O(そのスロットの件数)）。
+ *   下の段が 1 周するたびに 1 つ上の段の次のスロットを下へ振り分け直す（カスケード）
+ * - キャンセルは Timer.cancel() で印を付けるだけで、取り出したときに捨てる
+ *
+ * タスクは advance() に渡した MinecraftServer を受け取る。実行中に遅延 0 で積んだタスクは同じ advance() 内で実行する。
+ * サーバースレッド専用。
+ */
+final class TickWheel {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    /** 積んだタスクの控え（キャンセル用） */
+    static final class Timer {
+        final long due;
+        final Consumer<MinecraftServer> task;
+        Timer next;
+        boolean cancelled = false;
+
+        Timer(long due, Consumer<MinecraftServer> task) {
+            this.due = due;
+            this.task = task;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final Timer[][] slots = new Timer[LEVELS][SLOTS];
+    // 次に advance() で処理する tick
+    private long now = 0L;
+    private int size = 0;
+
+    /** 現在の tick（advance() 中は処理している tick、それ以外は次に処理する tick） */
+    long now() {
+        return now;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** 積んであるタスクを全て捨てる（実行しない） */
+    void clear() {
+        for (Timer[] level : slots) Arrays.fill(level, null);
+        size = 0;
+    }
+
+    /** delayTicks 後に task を実行する（0 以下なら次の advance()、advance() 中なら同じ advance() 内） */
+    Timer schedule(int delayTicks, Consumer<MinecraftServer> task) {
+        Timer t = new Timer(now + Math.max(0, delayTicks), task);
+        insert(t);
+        size++;
+        return t;
+    }
+
+    private void insert(Timer t) {
+        long delta = t.due - now;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (BITS * (level + 1)))) level++;
+        long due = t.due;
+        if (level == LEVELS - 1 && delta >= (1L << (BITS * LEVELS))) {
+            // 遠すぎる期限は最上段の「今の 1 つ前」のスロットに置き、1 周後に降りてきたら入れ直す
+            due = now + ((long) (SLOTS - 1) << (BITS * level));
+        }
+        int slot = (int) ((due >>> (BITS * level)) & MASK);
+        t.next = slots[level][slot];
+        slots[level][slot] = t;
+    }
+
+    /** 現在の tick のタスクを全て実行し、1 tick 進める */
+    void advance(MinecraftServer server) {
+        int slot = (int) (now & MASK);
+        Timer head;
+        // 実行中に同じ tick へ積まれた分も拾う
+        while ((head = slots[0][slot]) != null) {
+            slots[0][slot] = null;
+            for (Timer t = head; t != null; ) {
+                Timer next = t.next;
+                t.next = null;
+                if (t.due > now) {
+                    // 最上段から降りてきた遠い期限
+                    insert(t);
+                } else {
+                    size--;
+                    if (!t.cancelled) {
+                        try {
+                            t.task.accept(server);
+                        } catch (Throwable ex) {
+                            ex.printStackTrace();
+                        }
+                    }
+                }
+                t = next;
+            }
+        }
+
+        now++;
+        // 下の段が 1 周したら、上の段の今のスロットを振り分け直す
+        for (int level = 1; level < LEVELS; level++) {
+            if ((now & ((1L << (BITS * level)) - 1)) != 0) break;
+            int s = (int) ((now >>> (BITS * level)) & MASK);
+            Timer t = slots[level][s];
+            slots[level][s] = null;
+            while (t != null) {
+                Timer next = t.next;
+                t.next = null;
+                if (t.cancelled) {
+                    size--;
+                } else {
+                    insert(t);
+                }
+                t = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package net.misemise.ore_picker;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.ItemEnchantmentsComponent;
+import net.minecraft.enchantment.Enchantment;
+import net.minecraft.enchantment.Enchantments;
+import net.minecraft.item.ItemStack;
+import net.minecraft.registry.entry.RegistryEntry;
+
+/**
+ * ToolEnchantments - ツールの Silk Touch / Fortune のレベル。
+ *
+ * 1.21.4 ではエンチャントは ENCHANTMENTS データコンポーネントにあるので、それを 1 回だけ走査して読む
+ * （レジストリを引かずに RegistryEntry.matchesKey で照合する）。
+ * VeinJob は作成時にツールのコピーから 1 回だけ作って持ち、ブロックごとには読み直さない。
+ */
+record ToolEnchantments(int silkTouch, int fortune) {
+    static final ToolEnchantments NONE = new ToolEnchantments(0, 0);
+
+    static ToolEnchantments of(ItemStack stack) {
+        if (stack == null || stack.isEmpty()) return NONE;
+        ItemEnchantmentsComponent enchantments = stack.getOrDefault(DataComponentTypes.ENCHANTMENTS, ItemEnchantmentsComponent.DEFAULT);
+        if (enchantments.isEmpty()) return NONE;
+        int silk = 0, fortune = 0;
+        for (Object2IntMap.Entry<RegistryEntry<Enchantment>> e : enchantments.getEnchantmentEntries()) {
+            RegistryEntry<Enchantment> entry = e.getKey();
+            if (entry.matchesKey(Enchantments.SILK_TOUCH)) silk = e.getIntValue();
+            else if (entry.matchesKey(Enchantments.FORTUNE)) fortune = e.getIntValue();
+        }
+        return silk == 0 && fortune == 0 ? NONE : new ToolEnchantments(silk, fortune);
+    }
+
+    boolean hasSilkTouch() {
+        return silkTouch > 0;
+    }
+}
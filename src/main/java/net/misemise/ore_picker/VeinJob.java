@@ -0,0 +1,674 @@
+package net.misemise.ore_picker;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.misemise.ore_picker.config.ConfigManager;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.entity.ExperienceOrbEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * VeinJob - 1 回の一括破壊を表す再開可能なジョブ。
+ *
+ * - 最初の step() で VeinScanner による探索を行い、以降は cursor を進めながら破壊する
+ * - step() は締め切り (System.nanoTime() 基準) を受け取り、超えたらその場で中断して false を返す
+ * - 次の tick 以降に再び step() を呼ぶと続きから再開する
+ *
+ * 壊したブロックの回収・XP・トラッキングもジョブ単位で扱う。破壊ごとに onBroken() で座標と件数を積み、
+ * スライスの終わりに settle() でまとめて周囲のドロップを回収し、トラッキングを件数ごと数える。
+ * XP はブロックごとにバニラと同じ量（AutoCollectHandler.computeXp）を鉱脈全体で積み、完了時に 1 回で付与する
+ * （addExperience も取得音も 1 回。打ち切り時は開始位置にオーブとして落とす）。
+ * 回収は CollectScheduler.after() で 1 tick 後にもう一度だけ同じ座標でやり直す（遅れて出たドロップを拾う）。
+ * ツールは作成時にコピーした 1 つ（toolStack）をジョブ全体で共有し、書き換えない。
+ * そのエンチャント（ToolEnchantments: Silk Touch / Fortune）も作成時に 1 回だけ読み、ブロックごとには調べない。
+ *
+ * 開始・スライス・完了は VeinJournal に記録する（スライスごとに、まとめたドロップと XP の増分）。
+ * 完了前にサーバーが止まった場合、まとめていたドロップと XP は次の起動後に払い戻される。
+ *
+ * ConfigManager.directToInventory が有効なら、ドロップは DropAccumulator にまとめ、
+ * ジョブ完了時に一括でインベントリへ入れる（入りきらない分だけ ItemEntity になる）。
+ *
+ * ConfigManager.boundaryOnlyUpdates が有効なら、除去は近傍通知無しで行い、
+ * スライスの終わりごとに、そのスライスで除去した座標のうち外周（除去していない座標に接する位置。
+ * まだ壊していない鉱脈の座標も外側として数えるので、その隣も今更新し、後でそこを除去したときにもう一度更新される）だけへ
+ * 近傍・形状更新をまとめてかける（複数 tick にまたがっても、水や赤石が次のスライスまで古い隣を見たままにならない）。
+ * さらに sectionDeltaPackets が有効なら、クライアントへの通知もスライスの終わりに
+ * セクションごとの ChunkDeltaUpdateS2CPacket 1 つにまとめる（SectionDeltaBatcher）。
+ * deferLightUpdates も有効なら、除去中は光源チェックを積まず（LightDeferral）、
+ * 同じくスライスの終わりごとに外周の座標だけをセクションごとにまとめて LightingProvider.checkBlock に積む。
+ * 光では前のスライスで除去した座標に接する位置も外周として扱う（そこから内側へ伝播し直させるため）。
+ *
+ * ConfigManager.bulkBreakEffects が有効なら、破壊エフェクトは BreakEffectsBatch でスライスごとに
+ * 1 パケット（間引いたパーティクル座標）にまとめ、破壊音は鉱脈ごとに 1 回だけ鳴らす。
+ *
+ * ConfigManager.offThreadScan が有効なら、探索は SectionSnapshot（開始位置周辺のセクションの複製）上で
+ * VeinScanExecutor のワーカーが行う。結果が届くまでの tick は何もせずに戻り、足りないセクションがあれば
+ * サーバースレッドで複製を足して探索し直す。届いた結果は全て破壊前に読み直して検証する。
+ *
+ * 探索・読み直しは読み込み済みのチャンクだけを読み（未読み込みは壁）、チャンク境界で隣が未読み込みの座標は
+ * 読み込み済みの隣にだけ近傍更新をかける。ジョブが原因で同期的なチャンク読み込みを起こさない。
+ *
+ * 探索の前に VeinShapeCache を引き、有効な形が残っていれば探索せずにそれを使う（破壊前に全て読み直す）。
+ * 探索した形は、開始ブロックより先を壊す前に中断した場合（締め切り・レート制限）だけキャッシュに入れる。
+ * VeinRateLimiter で待たされているジョブは prepare() で探索だけ先に済ませ、同じくキャッシュに入れる。
+ * ワーカーでの探索中はスナップショットのセクションを VeinShapeCache.watch() で監視し、変わっていたら入れない。
+ *
+ * 探索した tick 内は探索時に読んだ state をそのまま使う。tick をまたいだ後は
+ * 破壊前に現在の state を読み直し、別のクラス（OreEquivalence）のブロックに変わっていたら飛ばす。
+ *
+ * サーバースレッド専用。
+ */
+public final class VeinJob {
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+    private static final Direction[] DIRECTIONS = Direction.values();
+    // スナップショットを広げて探索し直す回数の上限（超えたら足りないセクションは不一致扱いのまま使う）
+    static final int MAX_SCAN_ROUNDS = 8;
+
+    final ServerWorld world;
+    final UUID playerUuid;
+    final BlockPos startPos;
+    final BlockState originalState;
+    final int limit;
+    // 破壊時点のツールのコピー。ジョブ全体で共有し、書き換えない（null 可）
+    final ItemStack toolStack;
+    // 直接インベントリ投入モードのときだけ非 null
+    final DropAccumulator directDrops;
+    // 一括除去モード（近傍更新を外周だけにまとめる）のときだけ非 null。除去した座標を持つ
+    private final PackedPosSet clearedSet;
+    private long[] clearedOrder;
+    private int clearedCount = 0;
+    // 一括除去のクライアント通知をセクション単位にまとめる場合だけ非 null
+    private final SectionDeltaBatcher deltas;
+    // 一括除去中の光源チェックを止め、スライスの終わりに外周だけ積み直すか
+    private final boolean deferLight;
+    // 破壊エフェクトを鉱脈ごとにまとめる場合だけ非 null
+    private final BreakEffectsBatch effects;
+
+    // ワーカーで探索する場合の状態（snapshot / pendingScan は探索中だけ非 null）
+    private boolean offThread;
+    private SectionSnapshot snapshot = null;
+    private CompletableFuture<VeinScanner.Result> pendingScan = null;
+    private int scanRounds = 0;
+    private int scanConnectivity = 6;
+    // ワーカーで探索中のスナップショットの監視（キャッシュが無効なら null）
+    private VeinShapeCache.Watch scanWatch = null;
+    // 今の shape が自分で探索したもので、キャッシュに入れてよいか
+    private boolean shapeCacheable = false;
+    // 探索待ちの前に開始ブロックを壊すか（breakStartWhileScanning）
+    private boolean startFirst = false;
+
+    // スライス内で壊した座標（周囲のドロップ回収とジャーナル用）と、XP・トラッキングの集計
+    private long[] collectPositions = new long[16];
+    private int collectCount = 0;
+    private int pendingXp = 0;
+    // 鉱脈全体で積んだ XP（完了時に 1 回で付与する）
+    private int veinXp = 0;
+    private int trackedCount = 0;
+    private String trackedId = null;
+    // ツールのコピーのエンチャント（作成時に 1 回だけ読む。ツールが無ければ最初の破壊でメインハンドから読む）
+    private ToolEnchantments enchantments;
+    // VeinJournal のジョブ ID（記録しない場合は 0）
+    private final long journalId;
+
+    private VeinScanner.Result shape = null;
+    private int cursor = 0;
+    private int broken = 0;
+    private int ticks = 0;
+    // キューに入った時刻と、最初に step() が呼ばれた時刻（待ち時間の集計用）
+    private final long createdNanos = System.nanoTime();
+    private long startedNanos = 0L;
+    private boolean scannedThisTick = false;
+
+    VeinJob(ServerWorld world, UUID playerUuid, BlockPos startPos, BlockState originalState, int limit, ItemStack toolStack) {
+        this.world = world;
+        this.playerUuid = playerUuid;
+        this.startPos = startPos;
+        this.originalState = originalState;
+        this.limit = limit;
+        this.toolStack = toolStack;
+
+        boolean direct = false;
+        try {
+            direct = ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.directToInventory;
+        } catch (Throwable ignored) {}
+        this.directDrops = direct ? new DropAccumulator() : null;
+
+        ToolEnchantments ench = null;
+        if (toolStack != null) {
+            try {
+                ench = ToolEnchantments.of(toolStack);
+            } catch (Throwable t) {
+                t.printStackTrace();
+                ench = ToolEnchantments.NONE;
+            }
+        }
+        this.enchantments = ench;
+
+        boolean bulk = false;
+        try {
+            bulk = ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.boundaryOnlyUpdates;
+        } catch (Throwable ignored) {}
+        this.clearedSet = bulk ? new PackedPosSet(limit) : null;
+        this.clearedOrder = bulk ? new long[Math.max(16, Math.min(limit, 256))] : null;
+
+        boolean batchPackets = false;
+        try {
+            batchPackets = bulk && ConfigManager.INSTANCE.sectionDeltaPackets;
+        } catch (Throwable ignored) {}
+        this.deltas = batchPackets ? new SectionDeltaBatcher(world) : null;
+
+        boolean defer = false;
+        try {
+            defer = bulk && ConfigManager.INSTANCE.deferLightUpdates;
+        } catch (Throwable ignored) {}
+        this.deferLight = defer;
+
+        boolean bulkEffects = false;
+        int maxParticles = 16;
+        try {
+            bulkEffects = ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.bulkBreakEffects;
+            if (bulkEffects) maxParticles = ConfigManager.INSTANCE.breakEffectsMaxParticles;
+        } catch (Throwable ignored) {}
+        this.effects = bulkEffects ? new BreakEffectsBatch(world, maxParticles) : null;
+
+        boolean async = false;
+        try {
+            async = ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.offThreadScan;
+        } catch (Throwable ignored) {}
+        this.offThread = async;
+
+        long jid = 0L;
+        try {
+            jid = VeinJournal.admit(playerUuid, startPos.asLong(), direct);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        this.journalId = jid;
+    }
+
+    /** ワーカーの探索結果を待つ間も、開始ブロックだけは最初の step() で壊す（同 tick 実行用） */
+    void breakStartWhileScanning() {
+        this.startFirst = true;
+    }
+
+    /**
+     * 締め切りまで処理を進める。
+     * 返り値: ジョブが完了したら true（続きがあれば false）
+     */
+    boolean step(ServerPlayerEntity player, long deadlineNanos) {
+        return step(player, deadlineNanos, Integer.MAX_VALUE);
+    }
+
+    /** maxBlocks: この呼び出しで壊してよいブロック数の上限（VeinRateLimiter のトークン） */
+    boolean step(ServerPlayerEntity player, long deadlineNanos, int maxBlocks) {
+        if (isDone()) return true;
+        int brokenBefore = broken;
+        if (ticks == 0) startedNanos = System.nanoTime();
+        ticks++;
+
+        if (shape == null) {
+            if (offThread && startFirst) {
+                breakStart(player);
+                settle(player);
+            }
+            // 結果が届くまでは何もしない（届いた結果は下のループで読み直して検証する）
+            if (!ensureShape()) return false;
+        }
+
+        SectionBlockReader reader = scannedThisTick ? null : new SectionBlockReader(world);
+        Block target = originalState.getBlock();
+
+        while (cursor < shape.size()) {
+            int i = cursor++;
+            BlockState state = shape.states[i];
+            if (reader != null) {
+                // 前の tick から世界が変わっている可能性があるので読み直す
+                state = reader.get(shape.positions[i]);
+                if (state == null || !OreEquivalence.same(state.getBlock(), target)) continue;
+            }
+            if (VeinMiner.breakBlock(this, player, BlockPos.fromLong(shape.positions[i]), state)) {
+                broken++;
+            }
+            if (System.nanoTime() >= deadlineNanos || broken - brokenBefore >= maxBlocks) break;
+        }
+
+        scannedThisTick = false;
+        rememberShape();
+        // このスライスで変えたブロックをセクション単位で送り、外周の近傍を更新する
+        if (deltas != null) deltas.flush();
+        updateBoundary();
+        if (effects != null) effects.flush(startPos);
+        settle(player);
+        if (isDone()) finish(player);
+        return isDone();
+    }
+
+    /**
+     * VeinRateLimiter で待たされている間に呼ぶ。探索だけ先に済ませ、形をキャッシュに入れる（何も壊さない）。
+     * 探索は後の step() でもう一度行うことは無いので、余計に掛かるのはキャッシュに入れる分だけ。
+     */
+    void prepare() {
+        if (shape != null || startFirst) return;
+        try {
+            if (ensureShape()) {
+                // 壊すのは後の tick なので、その時点で読み直させる
+                scannedThisTick = false;
+                rememberShape();
+            }
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    /** キャッシュか探索で shape を用意する。ワーカーの結果待ちなら false */
+    private boolean ensureShape() {
+        if (shape != null) return true;
+        Block target = originalState.getBlock();
+        if (VeinShapeCache.enabled()) {
+            try {
+                VeinScanner.Result cached = VeinShapeCache.get(
+                        VeinShapeCache.key(world, startPos, target, limit, VeinScanner.configuredConnectivity()));
+                if (cached != null) {
+                    shape = cached;
+                    scannedThisTick = false;
+                    OrePickerLog.debug("vein shape cache hit: " + cached.size() + " blocks at " + startPos);
+                    return true;
+                }
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+
+        if (offThread) return pollOffThreadScan();
+        scanConnectivity = VeinScanner.configuredConnectivity();
+        shape = VeinScanner.scan(new SectionBlockReader(world), startPos, target, limit, 0, scanConnectivity);
+        scannedThisTick = true;
+        shapeCacheable = true;
+        return true;
+    }
+
+    /**
+     * 自分で探索した形を、開始ブロックより先を壊していなければキャッシュに入れる
+     * （開始座標の変化ではエントリは消えないが、それ以外を壊した後に入れると無効化を取りこぼす）。
+     */
+    private void rememberShape() {
+        if (!shapeCacheable) return;
+        boolean untouched = cursor == 0 || (cursor == 1 && shape.size() > 0 && shape.positions[0] == startPos.asLong());
+        shapeCacheable = false;
+        if (!untouched) return;
+        try {
+            VeinShapeCache.put(VeinShapeCache.key(world, startPos, originalState.getBlock(), limit, scanConnectivity), shape);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * 探索より先に開始ブロックを壊す。スナップショットは壊した後に取るので、探索結果に開始ブロックは入らない
+     * （入っていても破壊前の読み直しで空気になっているので飛ばされる）。
+     */
+    private void breakStart(ServerPlayerEntity player) {
+        startFirst = false;
+        try {
+            BlockState state = world.getBlockState(startPos);
+            if (!OreEquivalence.same(state.getBlock(), originalState.getBlock())) return;
+            if (VeinMiner.breakBlock(this, player, startPos, state)) broken++;
+            if (deltas != null) deltas.flush();
+            updateBoundary();
+            if (effects != null) effects.flush(startPos);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * ワーカーでの探索を進める。結果が確定して shape に入ったら true。
+     * スナップショットに無いセクションを読んでいたら、ここ（サーバースレッド）で複製を足して投げ直す。
+     */
+    private boolean pollOffThreadScan() {
+        Block target = originalState.getBlock();
+        if (pendingScan == null) {
+            snapshot = SectionSnapshot.capture(world, startPos, 1);
+            scanConnectivity = VeinScanner.configuredConnectivity();
+            if (VeinShapeCache.enabled()) {
+                scanWatch = VeinShapeCache.watch(VeinShapeCache.key(world, startPos, target, limit, scanConnectivity), snapshot.sectionKeys());
+            }
+            pendingScan = VeinScanExecutor.submit(snapshot, startPos, target, limit, scanConnectivity);
+            return false;
+        }
+        if (!pendingScan.isDone()) return false;
+
+        VeinScanner.Result result;
+        try {
+            result = pendingScan.join();
+        } catch (Throwable t) {
+            // ワーカーで失敗したらこのスレッドで探索し直す
+            t.printStackTrace();
+            result = VeinScanner.scan(new SectionBlockReader(world), startPos, target, limit, 0, scanConnectivity);
+            snapshot = null;
+        }
+        pendingScan = null;
+
+        if (snapshot != null && snapshot.hasMissing() && ++scanRounds < MAX_SCAN_ROUNDS) {
+            int added = snapshot.grow(world);
+            OrePickerLog.debug("vein scan snapshot grown by " + added + " sections (round " + scanRounds + ")");
+            VeinShapeCache.rewatch(scanWatch, snapshot.sectionKeys());
+            pendingScan = VeinScanExecutor.submit(snapshot, startPos, target, limit, scanConnectivity);
+            return false;
+        }
+
+        boolean complete = snapshot != null && !snapshot.hasMissing();
+        if (snapshot != null) {
+            OrePickerLog.debug("off-thread vein scan: " + result.size() + " blocks over " + snapshot.sectionCount() + " sections");
+        }
+        snapshot = null;
+        shape = result;
+        // 探索中に読んだセクションが変わっておらず、足りないセクションも無ければキャッシュに入れてよい
+        if (scanWatch != null) {
+            shapeCacheable = !scanWatch.isInvalidated() && complete;
+            VeinShapeCache.unwatch(scanWatch);
+            scanWatch = null;
+        }
+        // スナップショットは古い可能性があるので、探索した tick 扱いにせず全て読み直す
+        scannedThisTick = false;
+        return true;
+    }
+
+    /** 1 ブロック壊したら VeinMiner から呼ぶ。回収する座標と XP・トラッキングの件数を積むだけ */
+    void onBroken(ServerPlayerEntity player, BlockPos p, BlockState state) {
+        try {
+            // 直接投入モードでも座標はジャーナル用に積む（周囲の回収には使わない）
+            if (collectCount == collectPositions.length) collectPositions = Arrays.copyOf(collectPositions, collectCount * 2);
+            collectPositions[collectCount++] = p.asLong();
+            if (enchantments == null) enchantments = ToolEnchantments.of(player.getMainHandStack());
+            if (!enchantments.hasSilkTouch()) {
+                pendingXp += AutoCollectHandler.computeXp(state, world, toolStack != null ? toolStack : player.getMainHandStack());
+            }
+            if (trackedId == null) trackedId = state.getBlock().toString();
+            trackedCount++;
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * スライスで積んだ分をまとめて処理する（周囲のドロップ回収、トラッキング。XP は veinXp へ移して完了時に付与する）。
+     * player が null（打ち切り）のときはトラッキングだけ数える。
+     */
+    private void settle(ServerPlayerEntity player) {
+        try {
+            if (directDrops != null) VeinJournal.drops(journalId, directDrops.drainRecent());
+            if (pendingXp > 0) VeinJournal.xp(journalId, pendingXp);
+            veinXp += pendingXp;
+            if (player != null) {
+                if (collectCount > 0 && directDrops == null) {
+                    AutoCollectHandler.collectAround(world, player, collectPositions, collectCount);
+                    // 遅れて出るドロップもあるので、同じ座標をもう一度だけ拾う
+                    long[] retry = Arrays.copyOf(collectPositions, collectCount);
+                    CollectScheduler.after(CollectScheduler.COLLECT_RETRY_TICKS, server -> {
+                        ServerPlayerEntity p = server.getPlayerManager().getPlayer(playerUuid);
+                        if (p != null) AutoCollectHandler.collectAround(world, p, retry, retry.length);
+                    });
+                }
+            }
+            if (trackedCount > 0) VeinMineTracker.increment(playerUuid, trackedId, trackedCount);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        collectCount = 0;
+        pendingXp = 0;
+        trackedCount = 0;
+    }
+
+    /**
+     * ブロックを空気に置き換える。
+     * 一括除去モードでは近傍通知・形状更新を行わずに置き換え、座標だけ覚えておく（更新はスライスの終わりに外周だけ行う）。
+     * state は除去前の state（まとめた破壊エフェクトの見た目に使う）。
+     */
+    void clearBlock(BlockPos p, BlockState state) {
+        if (effects != null) effects.add(p, state);
+        if (clearedSet == null) {
+            if (touchesUnloaded(p)) {
+                world.setBlockState(p, AIR, Block.NOTIFY_LISTENERS | Block.FORCE_STATE);
+                updateLoadedNeighbors(p, state.getBlock());
+            } else {
+                world.setBlockState(p, AIR, Block.NOTIFY_ALL);
+            }
+            return;
+        }
+        // 発光している state（光る赤石鉱石など）は減光が内側から必要なので、その場で通常通りチェックさせる
+        boolean suspend = deferLight && state.getLuminance() == 0;
+        if (suspend) LightDeferral.suspend();
+        // リスナー通知（経路探索の更新など）は通常通り行い、この座標のクライアント向けの markForUpdate だけ止める
+        if (deltas != null) SectionDeltaBatcher.defer(p);
+        try {
+            world.setBlockState(p, AIR, Block.NOTIFY_LISTENERS | Block.FORCE_STATE);
+        } finally {
+            if (deltas != null) SectionDeltaBatcher.resume();
+            if (suspend) LightDeferral.resume();
+        }
+        // クライアントへの通知も自前でセクションごとにまとめて送る
+        if (deltas != null) deltas.add(p);
+        long key = p.asLong();
+        if (clearedSet.add(key)) {
+            if (clearedCount == clearedOrder.length) clearedOrder = Arrays.copyOf(clearedOrder, clearedCount * 2);
+            clearedOrder[clearedCount++] = key;
+        }
+    }
+
+    /**
+     * このスライスで一括除去した座標のうち、外周だけに近傍更新をかける（スライスの終わりごとに呼ぶ）。
+     * 隣が全て同じ鉱脈（除去済み）の内部座標は、通知しても相手が空気なので飛ばす。
+     * まだ壊していない鉱脈の座標は除去済みではないので外側として扱う。
+     */
+    private void updateBoundary() {
+        if (clearedSet == null || clearedCount == 0) return;
+        Block oldBlock = originalState.getBlock();
+        BlockPos.Mutable n = new BlockPos.Mutable();
+        int updated = 0;
+        Long2ObjectLinkedOpenHashMap<LongArrayList> lightBySection = deferLight ? new Long2ObjectLinkedOpenHashMap<>() : null;
+        // 光は前のスライスで除去した隣からも取り込み直す必要があるので、このスライスの座標だけの集合も持つ
+        PackedPosSet sliceSet = null;
+        if (lightBySection != null) {
+            sliceSet = new PackedPosSet(clearedCount);
+            for (int i = 0; i < clearedCount; i++) sliceSet.add(clearedOrder[i]);
+        }
+        for (int i = 0; i < clearedCount; i++) {
+            long key = clearedOrder[i];
+            BlockPos p = BlockPos.fromLong(key);
+            boolean boundary = false;
+            for (Direction d : DIRECTIONS) {
+                if (!clearedSet.contains(n.set(p, d).asLong())) {
+                    boundary = true;
+                    break;
+                }
+            }
+            // 光源チェックは、隣が全てこのスライスで除去した座標のときだけ省く
+            boolean lightBoundary = boundary;
+            if (!lightBoundary && sliceSet != null) {
+                for (Direction d : DIRECTIONS) {
+                    if (!sliceSet.contains(n.set(p, d).asLong())) {
+                        lightBoundary = true;
+                        break;
+                    }
+                }
+            }
+            if (lightBoundary && lightBySection != null) {
+                long section = ChunkSectionPos.toLong(p);
+                LongArrayList list = lightBySection.get(section);
+                if (list == null) {
+                    list = new LongArrayList();
+                    lightBySection.put(section, list);
+                }
+                list.add(key);
+            }
+            if (!boundary) continue;
+            try {
+                if (touchesUnloaded(p)) {
+                    updateLoadedNeighbors(p, oldBlock);
+                } else {
+                    world.updateNeighbors(p, oldBlock);
+                    AIR.updateNeighbors(world, p, Block.NOTIFY_ALL);
+                }
+                updated++;
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+        clearedCount = 0;
+        OrePickerLog.debug("boundary updates: " + updated + " of " + clearedSet.size() + " cleared");
+        if (lightBySection != null) queueBoundaryLight(lightBySection);
+    }
+
+    /** p の面で接する隣に、読み込まれていないチャンクのものがあるか（チャンク境界の座標だけ調べる） */
+    private boolean touchesUnloaded(BlockPos p) {
+        int x = p.getX(), z = p.getZ();
+        int cx = x >> 4, cz = z >> 4;
+        int lx = x & 15, lz = z & 15;
+        if (lx == 0 && !world.getChunkManager().isChunkLoaded(cx - 1, cz)) return true;
+        if (lx == 15 && !world.getChunkManager().isChunkLoaded(cx + 1, cz)) return true;
+        if (lz == 0 && !world.getChunkManager().isChunkLoaded(cx, cz - 1)) return true;
+        if (lz == 15 && !world.getChunkManager().isChunkLoaded(cx, cz + 1)) return true;
+        return false;
+    }
+
+    /**
+     * 読み込み済みのチャンクにある隣だけに、近傍更新と形状更新をかける。
+     * world.updateNeighbors / BlockState.updateNeighbors は隣を getBlockState で読むので、未読み込みだとチャンクを読み込んでしまう。
+     */
+    private void updateLoadedNeighbors(BlockPos p, Block oldBlock) {
+        BlockPos.Mutable m = new BlockPos.Mutable();
+        for (Direction d : DIRECTIONS) {
+            m.set(p, d);
+            if (!world.getChunkManager().isChunkLoaded(m.getX() >> 4, m.getZ() >> 4)) continue;
+            BlockPos np = m.toImmutable();
+            world.updateNeighbor(np, oldBlock, null);
+            BlockState ns = world.getBlockState(np);
+            BlockState updated = ns.getStateForNeighborUpdate(world, world, np, d.getOpposite(), p, AIR, world.random);
+            Block.replace(ns, updated, world, np, Block.NOTIFY_ALL);
+        }
+    }
+
+    /**
+     * 止めていた光源チェックを外周の座標だけセクションごとにまとめて積む（updateBoundary からスライスごとに）。
+     * 除去したブロックは全て不透過→空気なので明るくなる方向だけで、内側へは外周から伝播する。
+     */
+    private void queueBoundaryLight(Long2ObjectLinkedOpenHashMap<LongArrayList> bySection) {
+        if (bySection.isEmpty()) return;
+        int checks = 0;
+        try {
+            LightingProvider light = world.getChunkManager().getLightingProvider();
+            for (LongArrayList list : bySection.values()) {
+                for (int i = 0; i < list.size(); i++) {
+                    light.checkBlock(BlockPos.fromLong(list.getLong(i)));
+                    checks++;
+                }
+            }
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        OrePickerLog.debug("deferred light checks: " + checks + " in " + bySection.size() + " sections");
+    }
+
+    /** 完了時の後始末（外周の近傍更新、まとめた破壊エフェクトの送信、まとめたドロップの投入） */
+    private void finish(ServerPlayerEntity player) {
+        updateBoundary();
+        if (effects != null) effects.flush(startPos);
+        if (directDrops != null) directDrops.deliver(world, player, startPos);
+        if (veinXp > 0) {
+            AutoCollectHandler.grantXp(world, player, veinXp);
+            veinXp = 0;
+        }
+        VeinJournal.finish(journalId);
+    }
+
+    /** プレイヤーがいなくなる等で打ち切る場合。まとめたドロップと XP は開始位置に落とす */
+    void abandon() {
+        if (pendingScan != null) {
+            pendingScan.cancel(false);
+            pendingScan = null;
+        }
+        if (scanWatch != null) {
+            VeinShapeCache.unwatch(scanWatch);
+            scanWatch = null;
+        }
+        if (deltas != null) deltas.flush();
+        settle(null);
+        updateBoundary();
+        if (effects != null) effects.flush(startPos);
+        if (directDrops != null) directDrops.deliver(world, null, startPos);
+        if (veinXp > 0) {
+            try {
+                ExperienceOrbEntity.spawn(world, Vec3d.ofCenter(startPos), veinXp);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+            veinXp = 0;
+        }
+        VeinJournal.finish(journalId);
+    }
+
+    /**
+     * サーバー停止時に呼ぶ。壊した分の外周更新とクライアント通知だけ済ませ、ドロップと XP は渡さない
+     * （ジャーナルに記録していれば次の起動後に払い戻される。記録していなければ開始位置に落とす）。
+     * 停止中のワールドへ後から手を出さないよう、ジョブは以後使わない。
+     */
+    void stop() {
+        if (pendingScan != null) {
+            pendingScan.cancel(false);
+            pendingScan = null;
+        }
+        if (scanWatch != null) {
+            VeinShapeCache.unwatch(scanWatch);
+            scanWatch = null;
+        }
+        if (deltas != null) deltas.flush();
+        updateBoundary();
+        if (journalId != 0L) return;
+        if (directDrops != null) directDrops.deliver(world, null, startPos);
+        if (veinXp > 0) {
+            try {
+                ExperienceOrbEntity.spawn(world, Vec3d.ofCenter(startPos), veinXp);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+            veinXp = 0;
+        }
+    }
+
+    boolean isDone() {
+        return shape != null && cursor >= shape.size();
+    }
+
+    /** 残りのブロック数（未探索なら 0。スケジューラが小さい鉱脈を先に進めるのに使う） */
+    int remaining() {
+        return shape == null ? 0 : shape.size() - cursor;
+    }
+
+    /** 作成から最初の step() までの待ち時間（まだ始まっていなければ今までの待ち時間） */
+    long queueWaitNanos() {
+        return (ticks == 0 ? System.nanoTime() : startedNanos) - createdNanos;
+    }
+
+    public int broken() {
+        return broken;
+    }
+
+    /** このジョブに費やした tick 数（step() を呼んだ回数） */
+    public int ticks() {
+        return ticks;
+    }
+}
@@ -0,0 +1,196 @@
+package net.misemise.ore_picker;
+
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * VeinJobQueue - 実行中の VeinJob をプレイヤーごとのキューに分けて持ち、tick の予算を公平に配る。
+ *
+ * - プレイヤー間はラウンドロビン。tick ごとに先頭にするプレイヤーを 1 つずつずらし、
+ *   各プレイヤーには 1 回につき「予算 / 待っているプレイヤー数」（最低 MIN_SLICE_NANOS）を割り当てる
+ * - 1 周して予算が余り、誰かが進んでいれば次の周に入る（待っている人がいなければ 1 人で予算を使い切れる）
+ * - プレイヤー内では残りブロック数の少ないジョブから進める（未探索のジョブは 0 扱いで先頭。
+ *   小さな鉱脈は最初のスライスで終わる）
+ * - 各ジョブを進める前に VeinRateLimiter に壊してよい数を聞き、0 ならそのプレイヤーの番を飛ばす
+ *   （ジョブは残して待たせる。先頭のジョブは VeinJob.prepare() で探索だけ先に済ませる）
+ * - 1 プレイヤーが溜められるジョブは MAX_JOBS_PER_PLAYER まで。入口（CollectScheduler）が full() を見て、
+ *   超える分はジョブを作らずにバニラの破壊に任せる
+ * - ジョブが最初に進んだ時点の待ち時間（キューに入ってから）をプレイヤーごとに集計し、ジョブ完了時に debug ログへ出す
+ *
+ * 大きな鉱脈を掘っている人がいても、他のプレイヤーの小さな鉱脈は最初の自分の番で終わる。
+ * サーバースレッド専用。
+ */
+final class VeinJobQueue {
+    // 1 プレイヤー 1 回分の最小の割り当て（細かく切りすぎて切り替えばかりにならないように）
+    private static final long MIN_SLICE_NANOS = 200_000L;
+    // 1 プレイヤーが同時に溜められるジョブ数（キューと並べ替えを小さく保つ）
+    static final int MAX_JOBS_PER_PLAYER = 4;
+
+    private static final class PlayerQueue {
+        final ArrayList<VeinJob> jobs = new ArrayList<>(2);
+        // このキューが空になるまでの間の待ち時間の集計
+        int started = 0;
+        long totalWaitNanos = 0L;
+        long maxWaitNanos = 0L;
+    }
+
+    private final LinkedHashMap<UUID, PlayerQueue> queues = new LinkedHashMap<>();
+    private int rotation = 0;
+
+    void add(VeinJob job) {
+        PlayerQueue q = queues.get(job.playerUuid);
+        if (q == null) {
+            q = new PlayerQueue();
+            queues.put(job.playerUuid, q);
+        }
+        q.jobs.add(job);
+    }
+
+    /** playerUuid のジョブが上限まで溜まっていれば true */
+    boolean full(UUID playerUuid) {
+        PlayerQueue q = queues.get(playerUuid);
+        return q != null && q.jobs.size() >= MAX_JOBS_PER_PLAYER;
+    }
+
+    boolean isEmpty() {
+        return queues.isEmpty();
+    }
+
+    /** サーバー停止時に呼ぶ。全てのジョブを VeinJob.stop() で止めて捨てる（abandon() はしない） */
+    void stop() {
+        for (PlayerQueue q : queues.values()) {
+            for (VeinJob job : q.jobs) {
+                try {
+                    job.stop();
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+            }
+        }
+        queues.clear();
+        rotation = 0;
+    }
+
+    /** deadline（System.nanoTime() 基準）まで、プレイヤー間で公平にジョブを進める */
+    void run(long deadline) {
+        if (queues.isEmpty()) return;
+
+        // プレイヤーがいなくなったキューは破棄
+        Iterator<Map.Entry<UUID, PlayerQueue>> it = queues.entrySet().iterator();
+        ArrayList<ServerPlayerEntity> players = new ArrayList<>(queues.size());
+        ArrayList<PlayerQueue> order = new ArrayList<>(queues.size());
+        while (it.hasNext()) {
+            Map.Entry<UUID, PlayerQueue> e = it.next();
+            PlayerQueue q = e.getValue();
+            ServerPlayerEntity player = lookup(q.jobs.get(0), e.getKey());
+            if (player == null) {
+                for (VeinJob job : q.jobs) {
+                    try {
+                        job.abandon();
+                    } catch (Throwable t) {
+                        t.printStackTrace();
+                    }
+                }
+                it.remove();
+                continue;
+            }
+            players.add(player);
+            order.add(q);
+        }
+        int n = order.size();
+        if (n == 0) return;
+
+        int first = Math.floorMod(rotation++, n);
+        // 最初の周は締め切りを過ぎていても回す（どの tick でも先頭のプレイヤーは最低 1 ブロック進む）
+        boolean firstRound = true;
+        boolean progressed = true;
+        while (progressed) {
+            progressed = false;
+            long now = System.nanoTime();
+            if (!firstRound && now >= deadline) break;
+            firstRound = false;
+            long slice = Math.max(MIN_SLICE_NANOS, (deadline - now) / activeCount(order));
+            for (int k = 0; k < n; k++) {
+                int i = (first + k) % n;
+                PlayerQueue q = order.get(i);
+                if (q.jobs.isEmpty()) continue;
+                long start = System.nanoTime();
+                if (runPlayer(q, players.get(i), Math.min(deadline, start + slice))) progressed = true;
+                if (System.nanoTime() >= deadline) break;
+            }
+        }
+
+        queues.values().removeIf(q -> q.jobs.isEmpty());
+    }
+
+    /** 1 プレイヤー分の割り当てを使う。どれかのジョブが進んだら true */
+    private boolean runPlayer(PlayerQueue q, ServerPlayerEntity player, long sliceDeadline) {
+        // 残りの少ない順（プレイヤーあたり MAX_JOBS_PER_PLAYER までなので毎回並べ直しても安い）
+        if (q.jobs.size() > 1) q.jobs.sort((a, b) -> Integer.compare(a.remaining(), b.remaining()));
+        boolean progressed = false;
+        Iterator<VeinJob> it = q.jobs.iterator();
+        while (it.hasNext()) {
+            VeinJob job = it.next();
+            int allowance = VeinRateLimiter.allowance(job.playerUuid);
+            if (allowance <= 0) {
+                // トークンが溜まるまでの間に探索だけ済ませておく（形は VeinShapeCache に入る）
+                job.prepare();
+                break;
+            }
+            int before = job.remaining();
+            int brokenBefore = job.broken();
+            boolean first = job.ticks() == 0;
+            boolean done;
+            try {
+                done = job.step(player, sliceDeadline, allowance);
+            } catch (Throwable t) {
+                t.printStackTrace();
+                done = true;
+            }
+            VeinRateLimiter.consume(job.playerUuid, job.broken() - brokenBefore);
+            if (first) recordWait(q, job.queueWaitNanos());
+            if (done || job.remaining() != before) progressed = true;
+
+            if (done) {
+                it.remove();
+                try {
+                    OrePickerLog.debug("Vein job finished: broken=" + job.broken() + " ticks=" + job.ticks()
+                            + " " + job.originalState.getBlock().toString()
+                            + " wait=" + ms(job.queueWaitNanos()) + "ms"
+                            + " (player avg=" + ms(q.totalWaitNanos / Math.max(1, q.started)) + "ms"
+                            + " max=" + ms(q.maxWaitNanos) + "ms over " + q.started + " jobs)");
+                } catch (Throwable ignored) {}
+            }
+            if (System.nanoTime() >= sliceDeadline) break;
+        }
+        return progressed;
+    }
+
+    private static void recordWait(PlayerQueue q, long waitNanos) {
+        q.started++;
+        q.totalWaitNanos += waitNanos;
+        if (waitNanos > q.maxWaitNanos) q.maxWaitNanos = waitNanos;
+    }
+
+    private static int activeCount(ArrayList<PlayerQueue> order) {
+        int c = 0;
+        for (PlayerQueue q : order) if (!q.jobs.isEmpty()) c++;
+        return Math.max(1, c);
+    }
+
+    private static ServerPlayerEntity lookup(VeinJob job, UUID uuid) {
+        try {
+            if (job.world.getServer() != null) return job.world.getServer().getPlayerManager().getPlayer(uuid);
+        } catch (Throwable ignored) {}
+        return null;
+    }
+
+    private static String ms(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0d);
+    }
+}
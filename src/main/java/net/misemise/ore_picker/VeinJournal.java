@@ -0,0 +1,409 @@
+package net.misemise.ore_picker;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import net.misemise.ore_picker.config.ConfigManager;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.registry.Registries;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VeinJournal - 実行中の VeinJob の追記専用ジャーナル（ワールドの data/orepicker_jobs.journal）。
+ *
+ * - 記録は 4 種類: ADMIT（ジョブ開始）/ DROPS（スライスでまとめたドロップの増分）/
+ *   XP（スライスで積んだ XP）/ FINISH（ドロップと XP を渡し終えた）。
+ *   座標は記録しない（払い戻しはドロップと XP だけで、ジョブを再実行はしない）。以前の形式の SLICE（座標 + ドロップ）も読める
+ * - サーバースレッドは数十バイトのレコードを組み立てて渡すだけ。書き込みは専用の 1 スレッドが順に追記し、レコードごとに flush する
+ * - 起動時（open）に読み直し、FINISH の無いジョブのうち直接投入モードのドロップ（まとめて渡っていない）と
+ *   XP（完了時にまとめて付与する）を払い戻しとしてプレイヤーごとに持つ。次にそのプレイヤーが入ったときにインベントリへ入れ（入りきらない分は足元に落とす）、FINISH を追記する
+ * - 起動時と、ファイルが COMPACT_BYTES と前回詰め直した直後の大きさの 2 倍の両方を超えたときに、
+ *   書き込みスレッドで終わっていないジョブだけを書き直して置き換える（払い戻し待ちが多くても毎回詰め直さない）
+ *
+ * ItemEntity として落としたドロップはワールドと一緒に保存されるので、払い戻すのは DropAccumulator に溜めていた分だけ。
+ * アイテムは ID と個数だけ記録する（鉱石のドロップにコンポーネントは付かない）。
+ * 途中で切れた末尾のレコード（書き込み中のクラッシュ）は読み飛ばす。
+ */
+public final class VeinJournal {
+    private VeinJournal() {}
+
+    private static final byte ADMIT = 1;
+    // 以前の形式（座標 + ドロップ）。読むだけで書かない
+    private static final byte SLICE = 2;
+    private static final byte FINISH = 3;
+    private static final byte XP = 4;
+    private static final byte DROPS = 5;
+
+    // これと、前回詰め直した直後の大きさの 2 倍の両方を超えたら書き込みスレッドで詰め直す
+    private static final long COMPACT_BYTES = 1L << 20;
+
+    /** 書き込みスレッド側で持つ、終わっていないジョブの中身（詰め直しと払い戻しの計算に使う） */
+    private static final class Live {
+        final UUID player;
+        final long start;
+        final boolean direct;
+        final Object2IntLinkedOpenHashMap<String> drops = new Object2IntLinkedOpenHashMap<>();
+        int xp = 0;
+
+        Live(UUID player, long start, boolean direct) {
+            this.player = player;
+            this.start = start;
+            this.direct = direct;
+        }
+    }
+
+    /** 起動時に見つかった払い戻し */
+    private record Refund(long jobId, List<ItemStack> stacks, int xp) {}
+
+    private static volatile ExecutorService writer = null;
+    private static Path file = null;
+    // 以下は書き込みスレッド専用（open() の読み込み中だけサーバースレッド）
+    private static DataOutputStream out = null;
+    private static long written = 0L;
+    private static long compactedSize = 0L;
+    private static final Long2ObjectLinkedOpenHashMap<Live> LIVE = new Long2ObjectLinkedOpenHashMap<>();
+
+    private static final Map<UUID, List<Refund>> REFUNDS = new ConcurrentHashMap<>();
+    // サーバースレッド専用
+    private static long nextId = 1L;
+
+    /** 新しいジョブを記録するか（記録中のジョブは、ID があり書き込みスレッドが開いている間は記録を続ける） */
+    static boolean enabled() {
+        try {
+            return writer != null && (ConfigManager.INSTANCE == null || ConfigManager.INSTANCE.veinJournal);
+        } catch (Throwable ignored) {
+            return writer != null;
+        }
+    }
+
+    /** サーバー起動時に呼ぶ。前回の残りを読み、払い戻しを用意してから書き込みを始める */
+    public static void open(MinecraftServer server) {
+        close();
+        try {
+            file = server.getSavePath(WorldSavePath.ROOT).resolve("data").resolve("orepicker_jobs.journal");
+            Files.createDirectories(file.getParent());
+        } catch (Throwable t) {
+            OrePickerLog.error("vein journal unavailable:", t);
+            file = null;
+            return;
+        }
+
+        LIVE.clear();
+        REFUNDS.clear();
+        compactedSize = 0L;
+        long maxId = 0L;
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                maxId = replay(new DataInputStream(new BufferedInputStream(in)));
+            } catch (Throwable t) {
+                OrePickerLog.error("failed to read vein journal:", t);
+            }
+        }
+        nextId = maxId + 1;
+
+        int refunds = 0;
+        for (Long2ObjectMap.Entry<Live> e : LIVE.long2ObjectEntrySet()) {
+            Live live = e.getValue();
+            if (!needsRefund(live)) continue;
+            List<ItemStack> stacks = new ArrayList<>();
+            for (Object2IntMap.Entry<String> d : live.drops.object2IntEntrySet()) {
+                Identifier id = Identifier.tryParse(d.getKey());
+                // 前回から外れた MOD のアイテムなどは払い戻せない
+                if (id == null || !Registries.ITEM.containsId(id) || d.getIntValue() <= 0) continue;
+                Item item = Registries.ITEM.get(id);
+                // 1 スタックの上限ごとに分ける（足元に落ちた分を保存できるように）
+                int left = d.getIntValue();
+                int max = Math.max(1, item.getMaxCount());
+                while (left > 0) {
+                    int n = Math.min(left, max);
+                    stacks.add(new ItemStack(item, n));
+                    left -= n;
+                }
+            }
+            if (stacks.isEmpty() && live.xp <= 0) continue;
+            REFUNDS.computeIfAbsent(live.player, k -> new ArrayList<>()).add(new Refund(e.getLongKey(), stacks, live.xp));
+            refunds++;
+        }
+        // 払い戻しの要らないジョブは忘れる（詰め直しで消える）
+        LIVE.long2ObjectEntrySet().removeIf(e -> !needsRefund(e.getValue()));
+        if (maxId > 0) {
+            OrePickerLog.info("vein journal: " + refunds + " unfinished jobs to refund");
+        }
+
+        ExecutorService w = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "orepicker-journal");
+            t.setDaemon(true);
+            return t;
+        });
+        writer = w;
+        // 読み終わった内容で詰め直してから追記を始める
+        w.execute(VeinJournal::compact);
+    }
+
+    /** ジョブ開始。返り値のジョブ ID を以降の記録に使う（無効なら 0） */
+    static long admit(UUID player, long start, boolean direct) {
+        if (!enabled()) return 0L;
+        long id = nextId++;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(34);
+        try (DataOutputStream d = new DataOutputStream(buf)) {
+            d.writeByte(ADMIT);
+            d.writeLong(id);
+            d.writeLong(player.getMostSignificantBits());
+            d.writeLong(player.getLeastSignificantBits());
+            d.writeLong(start);
+            d.writeBoolean(direct);
+        } catch (IOException ignored) {}
+        submit(buf.toByteArray());
+        return id;
+    }
+
+    /** スライスでまとめたドロップの増分の記録（直接投入モードだけ。null・空なら何もしない） */
+    static void drops(long jobId, List<ItemStack> drops) {
+        if (jobId == 0L || writer == null || drops == null || drops.isEmpty()) return;
+        int nDrops = drops.size();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(13 + nDrops * 24);
+        try (DataOutputStream d = new DataOutputStream(buf)) {
+            d.writeByte(DROPS);
+            d.writeLong(jobId);
+            d.writeInt(nDrops);
+            for (int i = 0; i < nDrops; i++) {
+                ItemStack s = drops.get(i);
+                d.writeUTF(Registries.ITEM.getId(s.getItem()).toString());
+                d.writeInt(s.getCount());
+            }
+        } catch (IOException ignored) {}
+        submit(buf.toByteArray());
+    }
+
+    /** スライスで積んだ XP の記録（完了時にまとめて付与するので、それまでは払い戻しの対象） */
+    static void xp(long jobId, int xp) {
+        if (jobId == 0L || xp <= 0 || writer == null) return;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(13);
+        try (DataOutputStream d = new DataOutputStream(buf)) {
+            d.writeByte(XP);
+            d.writeLong(jobId);
+            d.writeInt(xp);
+        } catch (IOException ignored) {}
+        submit(buf.toByteArray());
+    }
+
+    /** ドロップと XP を渡し終えた（完了・打ち切り・払い戻し） */
+    static void finish(long jobId) {
+        if (jobId == 0L || writer == null) return;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(9);
+        try (DataOutputStream d = new DataOutputStream(buf)) {
+            d.writeByte(FINISH);
+            d.writeLong(jobId);
+        } catch (IOException ignored) {}
+        submit(buf.toByteArray());
+    }
+
+    /** プレイヤーが入ったときに呼ぶ（サーバースレッド）。前回の払い戻しがあれば渡す */
+    public static void onJoin(ServerPlayerEntity player) {
+        if (player == null || REFUNDS.isEmpty()) return;
+        List<Refund> refunds = REFUNDS.remove(player.getUuid());
+        if (refunds == null) return;
+        int items = 0, xp = 0;
+        for (Refund r : refunds) {
+            for (ItemStack stack : r.stacks()) {
+                items += stack.getCount();
+                try {
+                    player.getInventory().offerOrDrop(stack);
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+            }
+            xp += r.xp();
+            finish(r.jobId());
+        }
+        if (xp > 0) {
+            try {
+                player.addExperience(xp);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+        OrePickerLog.info("refunded " + items + " items and " + xp + " xp from " + refunds.size() + " interrupted vein jobs to " + player.getGameProfile().getName());
+    }
+
+    /** サーバー停止時に呼ぶ。積んである書き込みを終わらせて閉じる */
+    public static void close() {
+        ExecutorService w = writer;
+        if (w == null) return;
+        writer = null;
+        w.execute(() -> {
+            try {
+                if (out != null) out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            out = null;
+        });
+        w.shutdown();
+        try {
+            if (!w.awaitTermination(5, TimeUnit.SECONDS)) w.shutdownNow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** 払い戻すものが残っているジョブか（直接投入モードのまとめたドロップか、未付与の XP） */
+    private static boolean needsRefund(Live live) {
+        return (live.direct && !live.drops.isEmpty()) || live.xp > 0;
+    }
+
+    private static void submit(byte[] record) {
+        ExecutorService w = writer;
+        if (w == null) return;
+        try {
+            w.execute(() -> append(record));
+        } catch (Throwable ignored) {}
+    }
+
+    // ---- 以下、書き込みスレッド ----
+
+    private static void append(byte[] record) {
+        try {
+            if (out == null) {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), true)));
+                written = Files.size(file);
+            }
+            out.write(record);
+            out.flush();
+            written += record.length;
+            apply(new DataInputStream(new ByteArrayInputStream(record)));
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        if (written > Math.max(COMPACT_BYTES, 2 * compactedSize)) compact();
+    }
+
+    /** 終わっていないジョブだけを一時ファイルに書き直し、置き換える */
+    private static void compact() {
+        if (file == null) return;
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                 DataOutputStream d = new DataOutputStream(new BufferedOutputStream(fos))) {
+                for (Long2ObjectMap.Entry<Live> e : LIVE.long2ObjectEntrySet()) {
+                    Live live = e.getValue();
+                    d.writeByte(ADMIT);
+                    d.writeLong(e.getLongKey());
+                    d.writeLong(live.player.getMostSignificantBits());
+                    d.writeLong(live.player.getLeastSignificantBits());
+                    d.writeLong(live.start);
+                    d.writeBoolean(live.direct);
+                    if (!live.drops.isEmpty()) {
+                        d.writeByte(DROPS);
+                        d.writeLong(e.getLongKey());
+                        d.writeInt(live.drops.size());
+                        for (Object2IntMap.Entry<String> drop : live.drops.object2IntEntrySet()) {
+                            d.writeUTF(drop.getKey());
+                            d.writeInt(drop.getIntValue());
+                        }
+                    }
+                    if (live.xp > 0) {
+                        d.writeByte(XP);
+                        d.writeLong(e.getLongKey());
+                        d.writeInt(live.xp);
+                    }
+                }
+                d.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            written = Files.size(file);
+            compactedSize = written;
+            OrePickerLog.debug("vein journal compacted: " + LIVE.size() + " live jobs, " + written + " bytes");
+        } catch (Throwable t) {
+            // 失敗しても次に倍になるまでは試し直さない
+            compactedSize = written;
+            OrePickerLog.error("failed to compact vein journal:", t);
+        }
+    }
+
+    /** ファイル全体を読んで LIVE を組み立てる。返り値は最大のジョブ ID */
+    private static long replay(DataInputStream in) throws IOException {
+        long maxId = 0L;
+        while (true) {
+            long id;
+            try {
+                id = apply(in);
+            } catch (EOFException eof) {
+                break;
+            }
+            if (id < 0) break;
+            maxId = Math.max(maxId, id);
+        }
+        return maxId;
+    }
+
+    /** レコードを 1 つ読んで LIVE に反映する。返り値はジョブ ID（不明な種類なら -1） */
+    private static long apply(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        long id = in.readLong();
+        switch (type) {
+            case ADMIT -> {
+                UUID player = new UUID(in.readLong(), in.readLong());
+                long start = in.readLong();
+                boolean direct = in.readBoolean();
+                LIVE.put(id, new Live(player, start, direct));
+            }
+            case SLICE, DROPS -> {
+                Live live = LIVE.get(id);
+                if (type == SLICE) {
+                    // 以前の形式の座標は読み飛ばす
+                    int n = in.readInt();
+                    in.skipNBytes(8L * n);
+                }
+                int nDrops = in.readInt();
+                for (int i = 0; i < nDrops; i++) {
+                    String item = in.readUTF();
+                    int count = in.readInt();
+                    if (live != null) live.drops.addTo(item, count);
+                }
+            }
+            case XP -> {
+                Live live = LIVE.get(id);
+                int xp = in.readInt();
+                if (live != null) live.xp += xp;
+            }
+            case FINISH -> LIVE.remove(id);
+            default -> {
+                return -1L;
+            }
+        }
+        return id;
+    }
+}
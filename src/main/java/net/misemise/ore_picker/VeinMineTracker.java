@@ -3,8 +3,8 @@ package net.misemise.ore_picker;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
 
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
 import net.misemise.ore_picker.config.ConfigManager;
@@ -12,7 +12,9 @@ import net.misemise.ore_picker.config.ConfigManager;
 /**
  * VeinMineTracker
  * - AutoCollectHandler.increment(...) を呼ぶことでカウントする（壊したごとにインクリメント）
- * - 一定時間（INACTIVITY_TIMEOUT_MS）破壊イベントが来なければ「終了」とみなして通知する
+ * - 一定時間（INACTIVITY_TIMEOUT_TICKS）破壊イベントが来なければ「終了」とみなして通知する
+ *   締めは CollectScheduler のタイミングホイールに積む（プレイヤーごとに 1 つだけ。発火時にまだ新しい破壊があれば残りの分だけ積み直す）。
+ *   毎 tick 全プレイヤーを見回ることはしない
  * - startTracking/stopAndNotify を提供（将来の明示的 start/stop 用）
  */
 public final class VeinMineTracker {
@@ -22,24 +24,96 @@ public final class VeinMineTracker {
     private static final Map<UUID, Integer> COUNTS = new ConcurrentHashMap<>();
     // player UUID -> first-broken-block-id (string)
     private static final Map<UUID, String> FIRST_ID = new ConcurrentHashMap<>();
-    // player UUID -> millis of last increment
-    private static final Map<UUID, Long> LAST_ACTION_MS = new ConcurrentHashMap<>();
+    // player UUID -> tick of last increment (CollectScheduler.currentTick())
+    private static final Map<UUID, Long> LAST_ACTION_TICK = new ConcurrentHashMap<>();
+    // player UUID -> 締めのタイマーが積まれているか
+    private static final Map<UUID, Boolean> TIMER_PENDING = new ConcurrentHashMap<>();
 
-    // inactivity timeout in milliseconds; tuneable
-    private static final long INACTIVITY_TIMEOUT_MS = 300L; // 推奨: 200 - 500
+    // inactivity timeout in ticks; tuneable（6 tick = 300ms、推奨: 4 - 10）
+    private static final int INACTIVITY_TIMEOUT_TICKS = 6;
 
     /** 明示的にトラッキングを開始したい場合に呼ぶ */
     public static void startTracking(UUID playerUuid) {
         COUNTS.put(playerUuid, 0);
         FIRST_ID.remove(playerUuid);
-        LAST_ACTION_MS.put(playerUuid, System.currentTimeMillis());
+        touch(playerUuid);
     }
 
     /** 破壊が確定したら AutoCollectHandler などから呼ぶ（必須ではないが推奨） */
     public static void increment(UUID playerUuid, String blockId) {
-        COUNTS.compute(playerUuid, (k, v) -> (v == null) ? 1 : v + 1);
+        increment(playerUuid, blockId, 1);
+    }
+
+    /** まとめて count 件数える（VeinJob がスライスごとに 1 回呼ぶ） */
+    public static void increment(UUID playerUuid, String blockId, int count) {
+        if (count <= 0) return;
+        COUNTS.compute(playerUuid, (k, v) -> (v == null) ? count : v + count);
         FIRST_ID.putIfAbsent(playerUuid, blockId);
-        LAST_ACTION_MS.put(playerUuid, System.currentTimeMillis());
+        touch(playerUuid);
+    }
+
+    /** 最終操作の tick を更新し、締めのタイマーが無ければ積む（サーバースレッドから呼ぶ） */
+    private static void touch(UUID playerUuid) {
+        LAST_ACTION_TICK.put(playerUuid, CollectScheduler.currentTick());
+        if (TIMER_PENDING.putIfAbsent(playerUuid, Boolean.TRUE) == null) {
+            CollectScheduler.after(INACTIVITY_TIMEOUT_TICKS, server -> onTimer(server, playerUuid));
+        }
+    }
+
+    /** 締めのタイマー。最後の破壊から INACTIVITY_TIMEOUT_TICKS 経っていれば通知し、まだなら残りの分だけ積み直す */
+    private static void onTimer(MinecraftServer server, UUID uuid) {
+        Long last = LAST_ACTION_TICK.get(uuid);
+        if (last == null) {
+            // stopAndNotify 済み
+            TIMER_PENDING.remove(uuid);
+            return;
+        }
+        long remaining = last + INACTIVITY_TIMEOUT_TICKS - CollectScheduler.currentTick();
+        if (remaining > 0) {
+            CollectScheduler.after((int) remaining, s -> onTimer(s, uuid));
+            return;
+        }
+        TIMER_PENDING.remove(uuid);
+
+        // finalize
+        Integer cnt = COUNTS.remove(uuid);
+        String id = FIRST_ID.remove(uuid);
+        LAST_ACTION_TICK.remove(uuid);
+        if (cnt == null) cnt = 0;
+        if (id == null) id = "unknown";
+
+        ServerPlayerEntity player = null;
+        try {
+            player = server.getPlayerManager().getPlayer(uuid);
+        } catch (Throwable ignored) {}
+        if (player != null) {
+            // チャット出力は設定依存にする
+            boolean allowChat = false;
+            try {
+                if (ConfigManager.INSTANCE != null) {
+                    allowChat = ConfigManager.INSTANCE.logToChat || ConfigManager.INSTANCE.debug;
+                }
+            } catch (Throwable ignored) {}
+
+            try {
+                if (allowChat) {
+                    player.sendMessage(Text.literal("Broke " + cnt + " " + id), false);
+                }
+            } catch (Throwable ignored) {}
+
+            // コンソールには常に出す（デバッグ用）
+            try {
+                OrePickerLog.debug("Timeout finalize for " + uuid + ": Broke " + cnt + " " + id);
+            } catch (Throwable ignored) {}
+        }
+    }
+
+    /** サーバー停止時に呼ぶ（締めのタイマーはタイミングホイールと一緒に捨てられるので、印も消す） */
+    static void clear() {
+        COUNTS.clear();
+        FIRST_ID.clear();
+        LAST_ACTION_TICK.clear();
+        TIMER_PENDING.clear();
     }
 
     /** 明示的にトラッキングを終了して通知したい場合に呼ぶ */
@@ -47,7 +121,7 @@ public final class VeinMineTracker {
         UUID uuid = player.getUuid();
         Integer cnt = COUNTS.remove(uuid);
         String id = FIRST_ID.remove(uuid);
-        LAST_ACTION_MS.remove(uuid);
+        LAST_ACTION_TICK.remove(uuid);
         if (cnt == null) cnt = 0;
         if (id == null) id = "unknown";
 
@@ -70,49 +144,4 @@ public final class VeinMineTracker {
             OrePickerLog.debug("Finalized for " + uuid + " -> Broke " + cnt + " " + id);
         } catch (Throwable ignored) {}
     }
-
-    /**
-     * サーバ Tick 側から定期的に呼ぶメソッド。
-     * playerLookup: UUID -> ServerPlayerEntity (may return null if player not online)
-     * このメソッドはサーバスレッド上で呼ぶこと（ServerTickEvents 内で呼ぶ想定）
-     */
-    public static void handleTimeouts(Function<UUID, ServerPlayerEntity> playerLookup) {
-        long now = System.currentTimeMillis();
-        // 固有のキー配列を作る（ConcurrentHashMap を回しているため CME を避ける）
-        UUID[] keys = LAST_ACTION_MS.keySet().toArray(new UUID[0]);
-        for (UUID uuid : keys) {
-            Long last = LAST_ACTION_MS.get(uuid);
-            if (last == null) continue;
-            if (now - last >= INACTIVITY_TIMEOUT_MS) {
-                // finalize
-                Integer cnt = COUNTS.remove(uuid);
-                String id = FIRST_ID.remove(uuid);
-                LAST_ACTION_MS.remove(uuid);
-                if (cnt == null) cnt = 0;
-                if (id == null) id = "unknown";
-
-                ServerPlayerEntity player = playerLookup.apply(uuid);
-                if (player != null) {
-                    // チャット出力は設定依存にする
-                    boolean allowChat = false;
-                    try {
-                        if (ConfigManager.INSTANCE != null) {
-                            allowChat = ConfigManager.INSTANCE.logToChat || ConfigManager.INSTANCE.debug;
-                        }
-                    } catch (Throwable ignored) {}
-
-                    try {
-                        if (allowChat) {
-                            player.sendMessage(Text.literal("Broke " + cnt + " " + id), false);
-                        }
-                    } catch (Throwable ignored) {}
-
-                    // コンソールには常に出す（デバッグ用）
-                    try {
-                        OrePickerLog.debug("Timeout finalize for " + uuid + ": Broke " + cnt + " " + id);
-                    } catch (Throwable ignored) {}
-                }
-            }
-        }
-    }
 }
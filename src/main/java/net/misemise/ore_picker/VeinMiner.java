@@ -3,210 +3,83 @@ package net.misemise.ore_picker;
 import net.misemise.ore_picker.config.ConfigManager;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
-import net.minecraft.block.BlockState;
 import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
 import net.minecraft.item.ItemStack;
-import net.minecraft.block.Blocks;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Constructor;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
-import java.util.HashSet;
-import java.util.List;
-import java.util.UUID;
 import net.minecraft.util.math.BlockPos;
 
 /**
  * VeinMiner:
- * - BFS で同種ブロックを探索し、limit を超えたら探索を停止する。
- * - 各ブロック破壊時に toolStack を利用して drop を生成する（可能な場合は Block.dropStacks を呼ぶ）。
+ * - 探索と破壊の進行は VeinJob が持つ（ここは 1 ブロック分の破壊処理だけ。入口は CollectScheduler.onVeinBreak）。
+ * - 各ブロック破壊時に toolStack を利用して Block.getDroppedStacks でルートを計算し、Block.dropStack で落とす。
+ *   onStacksDropped は XP 無しで呼ぶので、バニラの XP オーブは出ない（XP はジョブがまとめて付与する）。
  *
  * 修正:
- * - CollectScheduler.schedule に渡す BlockState をそのブロック固有の state (currentState) にした。
+ * - XP・トラッキングに使う BlockState はそのブロック固有の state (currentState)。
  */
 public final class VeinMiner {
     private VeinMiner() {}
 
     /**
-     * mineAndSchedule:
-     *  - limit: 開始ブロックを含む合計上限
-     *  - toolStack: スケジュール時にキャプチャしたツール（null 可）
+     * breakBlock: 1 ブロック分の破壊。
+     *  - toolStack を使って drop を生成（getDroppedStacks + dropStack。XP オーブは出さない）
+     *  - 壊したブロックは job.onBroken() でジョブに積む（回収・XP・トラッキングはスライス単位でまとめて行う）
+     *  - ジョブが直接インベントリ投入モードならワールドに落とさず、ルートを計算してジョブに積む
+     *  - ブロックの除去は job.clearBlock() に任せる（一括モードでは近傍更新を後回しにする）
      *
-     * 返り値: broken count (※この実装では開始ブロックを除く隣接で破壊した数を返します)
+     * 返り値: 破壊処理を行ったら true
      */
-    public static int mineAndSchedule(ServerWorld world, ServerPlayerEntity player, BlockPos startPos, BlockState originalState, UUID playerUuid, int limit, ItemStack toolStack) {
-        if (world == null || player == null || originalState == null) return 0;
-        Block target = originalState.getBlock();
-        if (target == null) return 0;
-
-        int neighborLimit = Math.max(0, limit - 1);
+    static boolean breakBlock(VeinJob job, ServerPlayerEntity player, BlockPos p, BlockState currentState) {
+        if (currentState == null) return false;
 
-        Deque<BlockPos> q = new ArrayDeque<>();
-        HashSet<BlockPos> visited = new HashSet<>();
-        List<BlockPos> toBreak = new ArrayList<>();
-
-        // 6-direction neighbors
-        final int[][] DIRS = {{1,0,0},{-1,0,0},{0,1,0},{0,-1,0},{0,0,1},{0,0,-1}};
-        for (int[] d : DIRS) {
-            BlockPos n = startPos.add(d[0], d[1], d[2]);
-            q.add(n);
-            visited.add(n);
+        ServerWorld world = job.world;
+        ItemStack toolStack = job.toolStack;
+        if (job.directDrops != null) {
+            return breakDirect(job, player, p, currentState);
         }
 
-        while (!q.isEmpty() && toBreak.size() < neighborLimit) {
-            BlockPos p = q.poll();
-            if (p == null) continue;
-
-            BlockState bs = world.getBlockState(p);
-            if (bs == null) continue;
-            if (bs.getBlock() != target) continue;
-
-            toBreak.add(p);
-            if (toBreak.size() >= neighborLimit) break;
-
-            for (int[] d : DIRS) {
-                BlockPos nn = p.add(d[0], d[1], d[2]);
-                if (visited.contains(nn)) continue;
-                visited.add(nn);
-                BlockState ns = world.getBlockState(nn);
-                if (ns != null && ns.getBlock() == target) {
-                    q.add(nn);
-                }
+        try {
+            // breakDirect と同じくルートを計算し、ワールドに落とす（バニラの XP オーブは出さない）
+            ItemStack tool = toolStack != null ? toolStack : ItemStack.EMPTY;
+            for (ItemStack stack : Block.getDroppedStacks(currentState, world, p, null, player, tool)) {
+                Block.dropStack(world, p, stack);
             }
-        }
-
-        int broken = 0;
-        for (BlockPos p : toBreak) {
-            try {
-                BlockState currentState = world.getBlockState(p);
-                if (currentState == null) continue;
-
-                boolean dropped = false;
-
-                // 1) try to call Block.dropStacks(...) via reflection passing toolStack where possible
-                try {
-                    Class<?> blockClass = Class.forName("net.minecraft.block.Block");
-                    Class<?> blockStateClass = Class.forName("net.minecraft.block.BlockState");
-                    Class<?> worldClass = Class.forName("net.minecraft.world.World");
-                    Class<?> blockPosClass = Class.forName("net.minecraft.util.math.BlockPos");
-                    Class<?> blockEntityClass = null;
-                    try { blockEntityClass = Class.forName("net.minecraft.block.entity.BlockEntity"); } catch (Throwable ignored) {}
-                    Class<?> entityClass = Class.forName("net.minecraft.entity.Entity");
-                    Class<?> itemStackClass = Class.forName("net.minecraft.item.ItemStack");
-
-                    Method dropStacksMethod = null;
-                    try {
-                        dropStacksMethod = blockClass.getMethod("dropStacks", blockStateClass, worldClass, blockPosClass, blockEntityClass, entityClass, itemStackClass);
-                    } catch (Throwable ex) {
-                        for (Method m : blockClass.getMethods()) {
-                            if (!m.getName().equals("dropStacks")) continue;
-                            Class<?>[] params = m.getParameterTypes();
-                            if (params.length >= 3) {
-                                if (params[0].getName().toLowerCase().contains("blockstate")) {
-                                    dropStacksMethod = m;
-                                    break;
-                                }
-                            }
-                        }
-                    }
+            // XP は AutoCollectHandler 側で付与するので false
+            currentState.onStacksDropped(world, p, tool, false);
+            job.clearBlock(p, currentState);
 
-                    if (dropStacksMethod != null) {
-                        try {
-                            Object be = null;
-                            Class<?>[] params = dropStacksMethod.getParameterTypes();
-                            Object[] args = new Object[params.length];
-                            for (int i = 0; i < params.length; i++) {
-                                String pn = params[i].getName().toLowerCase();
-                                if (pn.contains("blockstate")) args[i] = currentState;
-                                else if (pn.contains("world")) args[i] = (Object) world;
-                                else if (pn.contains("blockpos")) args[i] = p;
-                                else if (pn.contains("blockentity")) args[i] = null;
-                                else if (pn.contains("entity")) args[i] = player;
-                                else if (pn.contains("itemstack")) args[i] = toolStack;
-                                else args[i] = null;
-                            }
+            // 回収・XP・トラッキングはジョブにまとめ、スライスの終わりに一括で行う
+            job.onBroken(player, p, currentState);
 
-                            if ((dropStacksMethod.getModifiers() & java.lang.reflect.Modifier.STATIC) != 0) {
-                                dropStacksMethod.invoke(null, args);
-                            } else {
-                                Object blockObj = currentState.getBlock();
-                                dropStacksMethod.invoke(blockObj, args);
-                            }
-                            dropped = true;
-                        } catch (Throwable exInvoke) {
-                            dropped = false;
-                        }
-                    }
-                } catch (Throwable reflectionEx) {
-                    dropped = false;
-                }
-
-                // 2) fallback: temporarily swap player's main hand and call world.breakBlock
-                if (!dropped) {
-                    ItemStack originalMain = null;
-                    Integer selectedSlot = null;
-                    boolean swapped = false;
-                    try {
-                        if (toolStack != null) {
-                            try {
-                                selectedSlot = player.getInventory().selectedSlot;
-                            } catch (Throwable t) {
-                                try {
-                                    java.lang.reflect.Field f = player.getInventory().getClass().getField("selectedSlot");
-                                    selectedSlot = (Integer) f.get(player.getInventory());
-                                } catch (Throwable ignored) {
-                                    selectedSlot = null;
-                                }
-                            }
-
-                            if (selectedSlot != null) {
-                                try {
-                                    originalMain = player.getInventory().getStack(selectedSlot);
-                                    player.getInventory().setStack(selectedSlot, toolStack.copy());
-                                    swapped = true;
-                                } catch (Throwable ignored) {
-                                    swapped = false;
-                                }
-                            }
-                        }
-                    } catch (Throwable ignored) {
-                        swapped = false;
-                    }
-
-                    try {
-                        world.breakBlock(p, true, player);
-                    } catch (Throwable ex2) {
-                        try { world.setBlockState(p, Blocks.AIR.getDefaultState(), 3); } catch (Throwable ignored) {}
-                    }
-
-                    if (swapped && selectedSlot != null) {
-                        try { player.getInventory().setStack(selectedSlot, originalMain); } catch (Throwable ignored) {}
-                    }
-                } else {
-                    // remove the block to avoid duplicates
-                    try { world.setBlockState(p, Blocks.AIR.getDefaultState(), 3); } catch (Throwable ignored) {}
-                }
-
-                // schedule collect for the broken block to pick up its drops (pass the actual block state)
-                try {
-                    CollectScheduler.schedule(world, p, playerUuid, currentState, false, toolStack);
-                } catch (Throwable ignored) {}
-
-                broken++;
-            } catch (Throwable t) {
-                t.printStackTrace();
-            }
+            return true;
+        } catch (Throwable t) {
+            t.printStackTrace();
+            return false;
         }
+    }
 
-        if (broken > 0) {
-            try {
-                String blockId = originalState.getBlock().toString();
-                OrePickerLog.debug("Vein broken: " + broken + " " + blockId);
-            } catch (Throwable ignored) {}
+    /**
+     * 直接インベントリ投入モード: ItemEntity を生成せず、Block.getDroppedStacks でルートを計算して積む。
+     * 周囲の回収（AABB 検索）は行わず、XP とトラッキングだけジョブに積む。
+     */
+    private static boolean breakDirect(VeinJob job, ServerPlayerEntity player, BlockPos p, BlockState currentState) {
+        ServerWorld world = job.world;
+        ItemStack toolStack = job.toolStack;
+        try {
+            ItemStack tool = toolStack != null ? toolStack : ItemStack.EMPTY;
+            for (ItemStack stack : Block.getDroppedStacks(currentState, world, p, null, player, tool)) {
+                job.directDrops.add(stack);
+            }
+            // 虫食いブロック等の副作用はバニラ通り。XP は AutoCollectHandler 側で付与するので false
+            currentState.onStacksDropped(world, p, tool, false);
+            job.clearBlock(p, currentState);
+        } catch (Throwable t) {
+            t.printStackTrace();
+            return false;
         }
 
-        return broken;
+        job.onBroken(player, p, currentState);
+        return true;
     }
 }
@@ -0,0 +1,175 @@
+package net.misemise.ore_picker;
+
+import net.misemise.ore_picker.config.ConfigManager;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.hit.BlockHitResult;
+import net.minecraft.util.hit.HitResult;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * VeinPrefetcher - ホールドキーを押している間に、狙っている鉱脈を先に探索しておく。
+ *
+ * - prefetchIntervalTicks ごとに、ホールド中のプレイヤーの視線をサーバー側でレイキャストする
+ * - 狙っているのが鉱石で、VeinShapeCache にまだ形が無ければ、SectionSnapshot を取ってワーカーで探索する
+ * - 探索中はスナップショットのセクションを VeinShapeCache.watch() で監視し、変化が無ければ結果をキャッシュに入れる
+ * - 実際に壊したときは VeinJob がキャッシュを引くので、探索を待たずにその tick から破壊を始められる
+ *
+ * プレイヤーごとに同時に 1 つだけ。狙いが変わったら前の探索の結果は使わない。サーバースレッド専用。
+ */
+public final class VeinPrefetcher {
+    private VeinPrefetcher() {}
+
+    private static final int DEFAULT_INTERVAL_TICKS = 5;
+
+    private static final class Task {
+        final ServerWorld world;
+        final BlockPos start;
+        final Block target;
+        final int limit;
+        final int connectivity;
+        final SectionSnapshot snapshot;
+        final VeinShapeCache.Watch watch;
+        CompletableFuture<VeinScanner.Result> future;
+        int rounds = 0;
+
+        Task(ServerWorld world, BlockPos start, Block target, int limit, int connectivity,
+             SectionSnapshot snapshot, VeinShapeCache.Watch watch) {
+            this.world = world;
+            this.start = start;
+            this.target = target;
+            this.limit = limit;
+            this.connectivity = connectivity;
+            this.snapshot = snapshot;
+            this.watch = watch;
+        }
+    }
+
+    private static final Map<UUID, Task> TASKS = new HashMap<>();
+    private static int tickCounter = 0;
+
+    static void tick(MinecraftServer server) {
+        if (server == null) return;
+        pollTasks(server);
+
+        boolean enabled = false;
+        int interval = DEFAULT_INTERVAL_TICKS;
+        try {
+            if (ConfigManager.INSTANCE != null) {
+                enabled = ConfigManager.INSTANCE.prefetchWhileHolding;
+                if (ConfigManager.INSTANCE.prefetchIntervalTicks > 0) interval = ConfigManager.INSTANCE.prefetchIntervalTicks;
+            }
+        } catch (Throwable ignored) {}
+        if (!enabled || !VeinShapeCache.enabled()) return;
+        if (++tickCounter < interval) return;
+        tickCounter = 0;
+
+        for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+            try {
+                if (!KeybindHandler.isHolding(player.getUuid())) continue;
+                prefetchFor(player);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    private static void prefetchFor(ServerPlayerEntity player) {
+        if (!(player.getWorld() instanceof ServerWorld world)) return;
+        HitResult hit = player.raycast(player.getBlockInteractionRange(), 1.0f, false);
+        if (!(hit instanceof BlockHitResult blockHit) || hit.getType() != HitResult.Type.BLOCK) return;
+
+        BlockPos pos = blockHit.getBlockPos().toImmutable();
+        BlockState state = world.getBlockState(pos);
+        if (!OreUtils.isOre(state)) return;
+
+        Block target = state.getBlock();
+        int limit = CollectScheduler.veinLimit();
+        int connectivity = VeinScanner.configuredConnectivity();
+        VeinShapeCache.Key key = VeinShapeCache.key(world, pos, target, limit, connectivity);
+
+        Task running = TASKS.get(player.getUuid());
+        if (running != null) {
+            if (running.watch.key().equals(key)) return;
+            // 狙いが変わった: 前の探索の結果は使わない
+            cancel(running);
+            TASKS.remove(player.getUuid());
+        }
+        if (VeinShapeCache.get(key) != null) return;
+
+        SectionSnapshot snapshot = SectionSnapshot.capture(world, pos, 1);
+        VeinShapeCache.Watch watch = VeinShapeCache.watch(key, snapshot.sectionKeys());
+        Task task = new Task(world, pos, target, limit, connectivity, snapshot, watch);
+        task.future = VeinScanExecutor.submit(snapshot, pos, target, limit, connectivity);
+        TASKS.put(player.getUuid(), task);
+    }
+
+    /** 終わった探索を回収する（足りないセクションがあれば広げて投げ直す） */
+    private static void pollTasks(MinecraftServer server) {
+        if (TASKS.isEmpty()) return;
+        Iterator<Map.Entry<UUID, Task>> it = TASKS.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, Task> e = it.next();
+            Task task = e.getValue();
+
+            if (server.getPlayerManager().getPlayer(e.getKey()) == null || task.watch.isInvalidated()) {
+                cancel(task);
+                it.remove();
+                continue;
+            }
+            if (!task.future.isDone()) continue;
+
+            VeinScanner.Result result;
+            try {
+                result = task.future.join();
+            } catch (Throwable t) {
+                t.printStackTrace();
+                cancel(task);
+                it.remove();
+                continue;
+            }
+
+            if (task.snapshot.hasMissing() && ++task.rounds < VeinJob.MAX_SCAN_ROUNDS) {
+                task.snapshot.grow(task.world);
+                VeinShapeCache.rewatch(task.watch, task.snapshot.sectionKeys());
+                task.future = VeinScanExecutor.submit(task.snapshot, task.start, task.target, task.limit, task.connectivity);
+                continue;
+            }
+
+            // 回数を使い切ってもまだ未ロードのセクションがあるなら途中までの形なので、キャッシュせずに捨てる
+            if (task.snapshot.hasMissing()) {
+                VeinShapeCache.unwatch(task.watch);
+                OrePickerLog.debug("vein prefetch discarded " + result.size() + " blocks at " + task.start + " (sections still missing)");
+                it.remove();
+                continue;
+            }
+
+            boolean stored = VeinShapeCache.complete(task.watch, result);
+            OrePickerLog.debug("vein prefetch " + (stored ? "cached " : "discarded ") + result.size() + " blocks at " + task.start);
+            it.remove();
+        }
+    }
+
+    /** サーバー停止時に呼ぶ。探索中の先読みを全て捨てる */
+    static void clear() {
+        for (Task task : TASKS.values()) cancel(task);
+        TASKS.clear();
+        tickCounter = 0;
+    }
+
+    private static void cancel(Task task) {
+        try {
+            if (task.future != null) task.future.cancel(false);
+        } catch (Throwable ignored) {}
+        VeinShapeCache.unwatch(task.watch);
+    }
+}
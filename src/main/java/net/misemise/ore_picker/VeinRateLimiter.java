@@ -0,0 +1,125 @@
+package net.misemise.ore_picker;
+
+import net.misemise.ore_picker.config.ConfigManager;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * VeinRateLimiter - 一括破壊のブロック数/秒をトークンバケットで制限する（プレイヤーごと + サーバー全体）。
+ *
+ * - レートは ConfigManager.veinRatePerPlayer / veinRateGlobal（ブロック/秒、0 以下で無制限）
+ * - バケットの容量は veinRateBurst（0 以下ならレート 1 秒分）。満タンから始まるので、普段の 1 鉱脈は待たずに壊せる
+ * - VeinJobQueue / CollectScheduler がジョブを進める前に allowance() で壊してよい数を聞き、
+ *   壊した数を consume() で引く。キュー済みのジョブはトークンが無くても捨てずに待たせる（溜まった分だけ進む）。
+ *   トークンが無い間の新しい破壊はジョブを作らずバニラに任せる（CollectScheduler.onVeinBreak）
+ *
+ * サーバースレッド専用。
+ */
+final class VeinRateLimiter {
+    private VeinRateLimiter() {}
+
+    private static final class Bucket {
+        double tokens;
+        long lastNanos;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastNanos = now;
+        }
+
+        /** 経過時間分を足す（容量で頭打ち） */
+        void refill(double rate, double capacity, long now) {
+            if (now > lastNanos) {
+                tokens = Math.min(capacity, tokens + rate * (now - lastNanos) / 1_000_000_000.0d);
+                lastNanos = now;
+            }
+        }
+    }
+
+    private static final Map<UUID, Bucket> PLAYERS = new HashMap<>();
+    private static Bucket global = null;
+
+    /** 今 playerUuid が壊してよいブロック数（無制限なら Integer.MAX_VALUE） */
+    static int allowance(UUID playerUuid) {
+        long now = System.nanoTime();
+        double limit = Integer.MAX_VALUE;
+
+        double perPlayer = perPlayerRate();
+        if (perPlayer > 0) {
+            double cap = capacity(perPlayer);
+            Bucket b = PLAYERS.get(playerUuid);
+            if (b == null) {
+                b = new Bucket(cap, now);
+                PLAYERS.put(playerUuid, b);
+            }
+            b.refill(perPlayer, cap, now);
+            limit = Math.min(limit, b.tokens);
+        }
+
+        double all = globalRate();
+        if (all > 0) {
+            double cap = capacity(all);
+            if (global == null) global = new Bucket(cap, now);
+            global.refill(all, cap, now);
+            limit = Math.min(limit, global.tokens);
+        }
+        return (int) Math.max(0, Math.floor(limit));
+    }
+
+    /** 実際に壊した数を引く */
+    static void consume(UUID playerUuid, int blocks) {
+        if (blocks <= 0) return;
+        Bucket b = PLAYERS.get(playerUuid);
+        if (b != null && perPlayerRate() > 0) b.tokens -= blocks;
+        if (global != null && globalRate() > 0) global.tokens -= blocks;
+    }
+
+    /** 満タンに戻ったプレイヤーのバケットを捨てる（無いのと同じなので）。毎 tick 呼ぶ */
+    static void sweep() {
+        if (PLAYERS.isEmpty()) return;
+        double rate = perPlayerRate();
+        if (rate <= 0) {
+            PLAYERS.clear();
+            return;
+        }
+        double cap = capacity(rate);
+        long now = System.nanoTime();
+        Iterator<Bucket> it = PLAYERS.values().iterator();
+        while (it.hasNext()) {
+            Bucket b = it.next();
+            b.refill(rate, cap, now);
+            if (b.tokens >= cap) it.remove();
+        }
+    }
+
+    static void clear() {
+        PLAYERS.clear();
+        global = null;
+    }
+
+    private static double perPlayerRate() {
+        try {
+            if (ConfigManager.INSTANCE != null) return ConfigManager.INSTANCE.veinRatePerPlayer;
+        } catch (Throwable ignored) {}
+        return 0;
+    }
+
+    private static double globalRate() {
+        try {
+            if (ConfigManager.INSTANCE != null) return ConfigManager.INSTANCE.veinRateGlobal;
+        } catch (Throwable ignored) {}
+        return 0;
+    }
+
+    private static double capacity(double rate) {
+        try {
+            if (ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.veinRateBurst > 0) {
+                return Math.max(1, ConfigManager.INSTANCE.veinRateBurst);
+            }
+        } catch (Throwable ignored) {}
+        return Math.max(1, rate);
+    }
+}
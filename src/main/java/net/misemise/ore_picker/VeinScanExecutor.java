@@ -0,0 +1,127 @@
+package net.misemise.ore_picker;
+
+import net.misemise.ore_picker.config.ConfigManager;
+import net.minecraft.block.Block;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * VeinScanExecutor - SectionSnapshot 上の鉱脈探索を回すワーカープール。
+ *
+ * - スレッドは最初の利用時に作るデーモンスレッド（サーバー停止時に shutdown() で止める）
+ * - 探索結果は CompletableFuture で返し、サーバースレッド側は tick ごとに isDone() を見るだけ（待たない）
+ * - 並列にするかは実際の鉱脈の大きさで決める。まず逐次で ConfigManager.parallelScanThreshold 個まで探し、
+ *   それより前に尽きれば（小さな鉱脈）その結果を返す。閾値に届いたら ParallelVeinScanner で ForkJoinPool に広げて
+ *   上限まで探し直す（結果は逐次探索と同じになる。無駄になる逐次の分は閾値で頭打ち）
+ * - debug が有効なら、並列の結果を同じスナップショットでの逐次探索と比べ、座標の集合と順序が違えばエラーを出す
+ */
+public final class VeinScanExecutor {
+    private VeinScanExecutor() {}
+
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 256;
+
+    private static volatile ExecutorService pool = null;
+    private static volatile ForkJoinPool forkJoin = null;
+
+    private static ExecutorService pool() {
+        ExecutorService p = pool;
+        if (p != null) return p;
+        synchronized (VeinScanExecutor.class) {
+            if (pool == null) {
+                int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+                AtomicInteger n = new AtomicInteger();
+                pool = Executors.newFixedThreadPool(threads, r -> {
+                    Thread t = new Thread(r, "orepicker-scan-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+                OrePickerLog.debug("vein scan pool started: " + threads + " threads");
+            }
+            return pool;
+        }
+    }
+
+    private static ForkJoinPool forkJoin() {
+        ForkJoinPool p = forkJoin;
+        if (p != null) return p;
+        synchronized (VeinScanExecutor.class) {
+            if (forkJoin == null) {
+                int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+                forkJoin = new ForkJoinPool(threads, fjPool -> {
+                    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(fjPool);
+                    t.setName("orepicker-scan-fj-" + t.getPoolIndex());
+                    t.setDaemon(true);
+                    return t;
+                }, null, false);
+                OrePickerLog.debug("parallel vein scan pool started: " + threads + " threads");
+            }
+            return forkJoin;
+        }
+    }
+
+    private static int parallelThreshold() {
+        try {
+            if (ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.parallelScanThreshold > 0) {
+                return ConfigManager.INSTANCE.parallelScanThreshold;
+            }
+        } catch (Throwable ignored) {}
+        return DEFAULT_PARALLEL_THRESHOLD;
+    }
+
+    /** snapshot 上で探索する。connectivity は呼び出し時点の設定を渡す（探索中に設定が変わっても揃うように） */
+    static CompletableFuture<VeinScanner.Result> submit(SectionSnapshot snapshot, BlockPos start, Block target, int limit, int connectivity) {
+        int threshold = parallelThreshold();
+        if (limit <= threshold) {
+            return CompletableFuture.supplyAsync(
+                    () -> VeinScanner.scan(snapshot, start, target, limit, 0, connectivity),
+                    pool());
+        }
+        ForkJoinPool fj = forkJoin();
+        return CompletableFuture.supplyAsync(
+                () -> scanBySize(fj, snapshot, start, target, limit, connectivity, threshold),
+                pool());
+    }
+
+    /** 逐次で threshold 個まで探し、届いたら並列で上限まで探し直す（ワーカースレッド） */
+    private static VeinScanner.Result scanBySize(ForkJoinPool fj, SectionSnapshot snapshot, BlockPos start, Block target,
+                                                 int limit, int connectivity, int threshold) {
+        VeinScanner.Result head = VeinScanner.scan(snapshot, start, target, threshold, 0, connectivity);
+        // 上限より前にキューが尽きた = 鉱脈全体を探し終えている
+        if (head.size() < threshold) return head;
+
+        VeinScanner.Result result = ParallelVeinScanner.scan(fj, snapshot, start, target, limit, 0, connectivity);
+        if (OrePickerLog.debugEnabled()) verify(snapshot, start, target, limit, connectivity, result);
+        return result;
+    }
+
+    /** 並列の結果が逐次探索と同じ座標を同じ順で持つか確かめる（debug 時だけ） */
+    private static void verify(SectionSnapshot snapshot, BlockPos start, Block target, int limit, int connectivity,
+                               VeinScanner.Result parallel) {
+        VeinScanner.Result sequential = VeinScanner.scan(snapshot, start, target, limit, 0, connectivity);
+        if (Arrays.equals(sequential.positions, parallel.positions)) {
+            OrePickerLog.debug("parallel vein scan verified: " + parallel.size() + " blocks at " + start);
+            return;
+        }
+        int diff = Arrays.mismatch(sequential.positions, parallel.positions);
+        OrePickerLog.error("parallel vein scan differs from sequential at " + start + ": sizes "
+                + sequential.size() + "/" + parallel.size() + ", first difference at index " + diff, null);
+    }
+
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+        if (forkJoin != null) {
+            forkJoin.shutdownNow();
+            forkJoin = null;
+        }
+    }
+}
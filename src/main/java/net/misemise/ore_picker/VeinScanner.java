@@ -0,0 +1,179 @@
+package net.misemise.ore_picker;
+
+import net.misemise.ore_picker.config.ConfigManager;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.Arrays;
+
+/**
+ * VeinScanner - 鉱脈探索 (BFS) のカーネル。
+ *
+ * - 座標は BlockPos.asLong() で long に詰めて扱い、探索中は BlockPos を一切生成しない
+ * - visited は PackedPosSet、キューは PackedPosQueue。どちらも limit から容量を見積もり、スレッドごとに使い回す
+ * - ブロックの読み取りは BlockSource 経由（SectionBlockReader でセクションを直接、または SectionSnapshot の複製を引く）
+ * - 各座標は visited に入った時点で一度だけキューに積まれ、取り出し時に一度だけ読まれる
+ * - 一致判定は OreEquivalence のクラス ID 比較（直前に見たブロックの判定結果を使い回す）
+ * - 隣接の定義は ConfigManager.veinConnectivity（6: 面 / 18: 面+辺 / 26: 面+辺+角）。
+ *   オフセットは静的な表で持つので、広げても探索中の割り当ては増えない。サーバーとクライアントのプレビューで共通
+ *
+ * 戻り値の Result は一致した座標（BFS 順、開始ブロックが一致していれば先頭）と、
+ * そのとき読んだ BlockState を持つ。破壊側はこの state を使い、同じ座標を再解決しない。
+ */
+public final class VeinScanner {
+    private VeinScanner() {}
+
+    /** 隣接オフセット表。dx[i], dy[i], dz[i] が i 番目の隣。面で接するものを先に並べる */
+    static final class Offsets {
+        final int[] dx, dy, dz;
+
+        Offsets(int connectivity) {
+            int[] x = new int[connectivity], y = new int[connectivity], z = new int[connectivity];
+            int n = 0;
+            // 0 でない成分の数（1: 面, 2: 辺, 3: 角）の少ない順に詰める
+            int maxAxes = connectivity == 26 ? 3 : connectivity == 18 ? 2 : 1;
+            for (int axes = 1; axes <= maxAxes; axes++) {
+                for (int ix = -1; ix <= 1; ix++) {
+                    for (int iy = -1; iy <= 1; iy++) {
+                        for (int iz = -1; iz <= 1; iz++) {
+                            if (Math.abs(ix) + Math.abs(iy) + Math.abs(iz) != axes) continue;
+                            x[n] = ix; y[n] = iy; z[n] = iz;
+                            n++;
+                        }
+                    }
+                }
+            }
+            this.dx = x; this.dy = y; this.dz = z;
+        }
+
+        int size() {
+            return dx.length;
+        }
+    }
+
+    private static final Offsets FACES = new Offsets(6);
+    private static final Offsets FACES_EDGES = new Offsets(18);
+    private static final Offsets FACES_EDGES_CORNERS = new Offsets(26);
+
+    static Offsets offsets(int connectivity) {
+        if (connectivity >= 26) return FACES_EDGES_CORNERS;
+        if (connectivity >= 18) return FACES_EDGES;
+        return FACES;
+    }
+
+    /** 設定の隣接数（6 / 18 / 26）。読めなければ 6 */
+    public static int configuredConnectivity() {
+        try {
+            if (ConfigManager.INSTANCE != null) return ConfigManager.INSTANCE.veinConnectivity;
+        } catch (Throwable ignored) {}
+        return 6;
+    }
+
+    /** 探索結果。positions[i] の座標を読んだときの state が states[i]。 */
+    public static final class Result {
+        public static final Result EMPTY = new Result(new long[0], new BlockState[0]);
+
+        public final long[] positions;
+        public final BlockState[] states;
+
+        Result(long[] positions, BlockState[] states) {
+            this.positions = positions;
+            this.states = states;
+        }
+
+        public int size() {
+            return positions.length;
+        }
+    }
+
+    private static final class Buffers {
+        final PackedPosSet visited = new PackedPosSet(256);
+        final PackedPosQueue queue = new PackedPosQueue(256);
+        long[] found = new long[64];
+        BlockState[] foundStates = new BlockState[64];
+    }
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * start から target と同じクラス（OreEquivalence）のブロックを BFS で探索する。
+     *  - limit: 開始ブロックを含む合計上限
+     *  - maxManhattan: start からのマンハッタン距離の上限（0 以下で無制限）
+     * 隣接の定義は設定（veinConnectivity）に従う。
+     */
+    public static Result scan(BlockSource reader, BlockPos start, Block target, int limit, int maxManhattan) {
+        return scan(reader, start, target, limit, maxManhattan, configuredConnectivity());
+    }
+
+    /** connectivity: 6 / 18 / 26（それ以外は近い小さい方に丸める） */
+    public static Result scan(BlockSource reader, BlockPos start, Block target, int limit, int maxManhattan, int connectivity) {
+        if (reader == null || start == null || target == null || limit <= 0) return Result.EMPTY;
+        Offsets o = offsets(connectivity);
+        int[] dx = o.dx, dy = o.dy, dz = o.dz;
+
+        Buffers b = BUFFERS.get();
+        PackedPosSet visited = b.visited;
+        PackedPosQueue queue = b.queue;
+
+        int expected = limit * o.size();
+        visited.reset(expected);
+        queue.reset(expected);
+        if (b.found.length < limit) {
+            int cap = Math.max(limit, b.found.length * 2);
+            b.found = new long[cap];
+            b.foundStates = new BlockState[cap];
+        }
+        long[] found = b.found;
+        BlockState[] foundStates = b.foundStates;
+        int count = 0;
+
+        int sx = start.getX(), sy = start.getY(), sz = start.getZ();
+        long startKey = start.asLong();
+        visited.add(startKey);
+        queue.add(startKey);
+
+        int targetClass = OreEquivalence.classOf(target);
+        // 鉱脈の周囲は同じ石ブロックが続くので、直前のブロックの判定を覚えておく
+        Block lastBlock = null;
+        boolean lastMatch = false;
+
+        boolean first = true;
+        while (!queue.isEmpty() && count < limit) {
+            long key = queue.poll();
+            BlockState bs = reader.get(key);
+            boolean match = false;
+            if (bs != null) {
+                Block block = bs.getBlock();
+                if (block != lastBlock) {
+                    lastBlock = block;
+                    lastMatch = block == target || OreEquivalence.classOf(block) == targetClass;
+                }
+                match = lastMatch;
+            }
+
+            if (match) {
+                foundStates[count] = bs;
+                found[count++] = key;
+                if (count >= limit) break;
+            } else if (!first) {
+                // 一致しない座標からは広げない（開始ブロックだけは既に壊れていても周囲を探す）
+                continue;
+            }
+            first = false;
+
+            int x = BlockPos.unpackLongX(key), y = BlockPos.unpackLongY(key), z = BlockPos.unpackLongZ(key);
+            for (int d = 0; d < dx.length; d++) {
+                int nx = x + dx[d], ny = y + dy[d], nz = z + dz[d];
+                if (maxManhattan > 0 && Math.abs(nx - sx) + Math.abs(ny - sy) + Math.abs(nz - sz) > maxManhattan) continue;
+                long nk = BlockPos.asLong(nx, ny, nz);
+                if (visited.add(nk)) queue.add(nk);
+            }
+        }
+
+        Result result = new Result(Arrays.copyOf(found, count), Arrays.copyOf(foundStates, count));
+        // スレッドローカルに BlockState の参照を残さない
+        Arrays.fill(foundStates, 0, count, null);
+        return result;
+    }
+}
@@ -0,0 +1,312 @@
+package net.misemise.ore_picker;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.misemise.ore_picker.config.ConfigManager;
+import net.minecraft.block.Block;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * VeinShapeCache - 探索済みの鉱脈の形（座標列）をサーバー側で覚えておくキャッシュ。
+ *
+ * - キーは (ディメンション, 開始座標, 対象の同値クラス, 上限, 隣接数)
+ * - エントリは鉱脈が触れているセクション（各座標の周囲 1 ブロックを含む）に索引を張り、
+ *   そのセクションでブロックが変わったら（ServerWorldMixin → onBlockChanged）無効にする。
+ *   ただし開始座標自身の変化は無視する（探索は開始ブロックが一致しなくても周囲へ広げるので、形は変わらない）
+ * - 件数（veinCacheMaxEntries）と経過時間（veinCacheMaxAgeMs）で上限を設け、最後に使ってから古いものから捨てる
+ * - 設定リロードで全て捨てる（同値クラスや隣接数が変わるため）
+ * - 既定では無効。veinShapeCache か prefetchWhileHolding を有効にして起動したときだけ、
+ *   OrePickerMixinPlugin が ServerWorldMixin（onBlockChanged の通知）を入れ、キャッシュが働く
+ *
+ * 形を入れるのは、開始ブロックより先を壊す前に探索を済ませた VeinJob（締め切り・レート制限で中断した場合と、
+ * レート制限で待っている間の VeinJob.prepare()）と、ホールド中の先読み（VeinPrefetcher）。
+ *
+ * ワーカーで探索する場合（VeinJob の offThreadScan、VeinPrefetcher）は、スナップショットを取った時点で watch() しておき、
+ * 探索中にそのセクションが変わったら結果を捨てる（complete() で無効なら put しない）。
+ *
+ * 取り出した形はそのまま信用せず、VeinJob が破壊前に state を読み直して検証する。
+ * サーバースレッド専用。
+ */
+public final class VeinShapeCache {
+    private VeinShapeCache() {}
+
+    private static final int DEFAULT_MAX_ENTRIES = 64;
+    private static final long DEFAULT_MAX_AGE_MS = 5000L;
+
+    public record Key(RegistryKey<World> dimension, long start, int targetClass, int limit, int connectivity) {}
+
+    /** セクション索引に載るもの（キャッシュのエントリか、探索中の監視） */
+    private abstract static class Indexed {
+        final Key key;
+        long[] sections;
+
+        Indexed(Key key, long[] sections) {
+            this.key = key;
+            this.sections = sections;
+        }
+    }
+
+    private static final class Entry extends Indexed {
+        final VeinScanner.Result shape;
+        final long createdMs;
+
+        Entry(Key key, VeinScanner.Result shape, long[] sections, long createdMs) {
+            super(key, sections);
+            this.shape = shape;
+            this.createdMs = createdMs;
+        }
+    }
+
+    /** ワーカーで探索中の形の監視。対象セクションが変わったら invalidated になる */
+    public static final class Watch extends Indexed {
+        private boolean invalidated = false;
+
+        private Watch(Key key, long[] sections) {
+            super(key, sections);
+        }
+
+        public Key key() {
+            return key;
+        }
+
+        public boolean isInvalidated() {
+            return invalidated;
+        }
+    }
+
+    // アクセス順（先頭が最後に使ってから最も古い）
+    private static final LinkedHashMap<Key, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    // ディメンションごとの セクション → そのセクションに触れているエントリ
+    private static final Map<RegistryKey<World>, Long2ObjectOpenHashMap<ArrayList<Indexed>>> BY_SECTION = new HashMap<>();
+    private static int watching = 0;
+
+    private static boolean listening = false;
+    // 設定リロードで立つ。消去自体は tick() でサーバースレッドから行う
+    private static volatile boolean clearRequested = false;
+
+    public static Key key(World world, BlockPos start, Block target, int limit, int connectivity) {
+        return new Key(world.getRegistryKey(), start.asLong(), OreEquivalence.classOf(target), limit, connectivity);
+    }
+
+    /** 起動時にブロック変化のフックが入っていて、veinShapeCache か prefetchWhileHolding が有効なら true */
+    static boolean enabled() {
+        if (!OrePickerMixinPlugin.shapeCacheHooked()) return false;
+        try {
+            return ConfigManager.INSTANCE != null
+                    && (ConfigManager.INSTANCE.veinShapeCache || ConfigManager.INSTANCE.prefetchWhileHolding);
+        } catch (Throwable ignored) {
+            return false;
+        }
+    }
+
+    /** 有効なエントリがあれば形を返す（無い・古い場合は null） */
+    public static VeinScanner.Result get(Key key) {
+        if (key == null || ENTRIES.isEmpty()) return null;
+        Entry e = ENTRIES.get(key);
+        if (e == null) return null;
+        if (System.currentTimeMillis() - e.createdMs > maxAgeMs()) {
+            remove(e);
+            return null;
+        }
+        return e.shape;
+    }
+
+    /** 形を覚える。既存のエントリは置き換える */
+    public static void put(Key key, VeinScanner.Result shape) {
+        if (key == null || shape == null || !enabled()) return;
+        ensureListener();
+
+        Entry old = ENTRIES.get(key);
+        if (old != null) remove(old);
+
+        Entry e = new Entry(key, shape, coveredSections(shape), System.currentTimeMillis());
+        ENTRIES.put(key, e);
+        index(e);
+        evict();
+    }
+
+    /** ワーカーでの探索を始める前に、読んだセクション（スナップショット）の変化の監視を始める */
+    public static Watch watch(Key key, long[] sections) {
+        Watch w = new Watch(key, sections);
+        index(w);
+        watching++;
+        return w;
+    }
+
+    /** スナップショットを広げたときに監視範囲を差し替える */
+    public static void rewatch(Watch w, long[] sections) {
+        if (w == null || w.invalidated) return;
+        unindex(w);
+        w.sections = sections;
+        index(w);
+    }
+
+    /** 監視をやめる（結果を使わない場合） */
+    public static void unwatch(Watch w) {
+        if (w == null) return;
+        if (!w.invalidated) {
+            unindex(w);
+            w.invalidated = true;
+        }
+        watching = Math.max(0, watching - 1);
+    }
+
+    /** 探索が終わったら呼ぶ。監視中に変化が無ければ形を覚えて true */
+    public static boolean complete(Watch w, VeinScanner.Result shape) {
+        if (w == null) return false;
+        boolean valid = !w.invalidated;
+        unwatch(w);
+        if (valid) put(w.key, shape);
+        return valid;
+    }
+
+    /** ブロック変化の通知（ServerWorldMixin から毎回呼ばれるので、空なら何もしない） */
+    public static void onBlockChanged(World world, BlockPos pos) {
+        if (ENTRIES.isEmpty() && watching == 0) return;
+        Long2ObjectOpenHashMap<ArrayList<Indexed>> index = BY_SECTION.get(world.getRegistryKey());
+        if (index == null) return;
+        ArrayList<Indexed> list = index.get(ChunkSectionPos.toLong(pos));
+        if (list == null) return;
+
+        long changed = pos.asLong();
+        ArrayList<Indexed> stale = null;
+        for (Indexed e : list) {
+            if (e.key.start() == changed) continue;
+            if (stale == null) stale = new ArrayList<>(list.size());
+            stale.add(e);
+        }
+        if (stale == null) return;
+        for (Indexed e : stale) {
+            if (e instanceof Entry entry) {
+                remove(entry);
+            } else if (e instanceof Watch w) {
+                unindex(w);
+                w.invalidated = true;
+            }
+        }
+    }
+
+    public static void clear() {
+        int n = ENTRIES.size();
+        ENTRIES.clear();
+        // 探索中の監視も結果を使わせない
+        for (Long2ObjectOpenHashMap<ArrayList<Indexed>> index : BY_SECTION.values()) {
+            for (ArrayList<Indexed> list : index.values()) {
+                for (Indexed e : list) {
+                    if (e instanceof Watch w) w.invalidated = true;
+                }
+            }
+        }
+        BY_SECTION.clear();
+        if (n > 0) OrePickerLog.debug("vein shape cache cleared (" + n + " entries)");
+    }
+
+    private static void remove(Entry e) {
+        if (ENTRIES.get(e.key) == e) ENTRIES.remove(e.key);
+        unindex(e);
+    }
+
+    private static void index(Indexed e) {
+        Long2ObjectOpenHashMap<ArrayList<Indexed>> index = BY_SECTION.computeIfAbsent(e.key.dimension(), k -> new Long2ObjectOpenHashMap<>());
+        for (long section : e.sections) {
+            ArrayList<Indexed> list = index.get(section);
+            if (list == null) {
+                list = new ArrayList<>(2);
+                index.put(section, list);
+            }
+            list.add(e);
+        }
+    }
+
+    private static void unindex(Indexed e) {
+        Long2ObjectOpenHashMap<ArrayList<Indexed>> index = BY_SECTION.get(e.key.dimension());
+        if (index == null) return;
+        for (long section : e.sections) {
+            ArrayList<Indexed> list = index.get(section);
+            if (list == null) continue;
+            list.remove(e);
+            if (list.isEmpty()) index.remove(section);
+        }
+        if (index.isEmpty()) BY_SECTION.remove(e.key.dimension());
+    }
+
+    private static void evict() {
+        long now = System.currentTimeMillis();
+        long maxAge = maxAgeMs();
+        int maxEntries = maxEntries();
+        ArrayList<Entry> drop = null;
+        int keep = ENTRIES.size();
+        Iterator<Entry> it = ENTRIES.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            boolean expired = now - e.createdMs > maxAge;
+            if (!expired && keep <= maxEntries) continue;
+            if (drop == null) drop = new ArrayList<>();
+            drop.add(e);
+            keep--;
+        }
+        if (drop != null) for (Entry e : drop) remove(e);
+    }
+
+    /** 各座標と、その周囲 1 ブロック（角を含む）が入るセクション */
+    private static long[] coveredSections(VeinScanner.Result shape) {
+        LongOpenHashSet out = new LongOpenHashSet();
+        for (long p : shape.positions) {
+            int x = BlockPos.unpackLongX(p), y = BlockPos.unpackLongY(p), z = BlockPos.unpackLongZ(p);
+            for (int dx = -1; dx <= 1; dx += 2) {
+                for (int dy = -1; dy <= 1; dy += 2) {
+                    for (int dz = -1; dz <= 1; dz += 2) {
+                        out.add(ChunkSectionPos.asLong((x + dx) >> 4, (y + dy) >> 4, (z + dz) >> 4));
+                    }
+                }
+            }
+        }
+        return out.toLongArray();
+    }
+
+    private static void ensureListener() {
+        if (listening) return;
+        try {
+            if (ConfigManager.INSTANCE != null) {
+                // 設定ファイルの監視スレッドから呼ばれるので、消去はサーバースレッドで行う
+                ConfigManager.INSTANCE.addChangeListener(() -> clearRequested = true);
+                listening = true;
+            }
+        } catch (Throwable ignored) {}
+    }
+
+    /** 毎 tick サーバースレッドから呼ぶ（設定リロード後の消去を反映する） */
+    static void tick() {
+        if (clearRequested) {
+            clearRequested = false;
+            clear();
+        }
+    }
+
+    private static int maxEntries() {
+        try {
+            if (ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.veinCacheMaxEntries > 0) {
+                return ConfigManager.INSTANCE.veinCacheMaxEntries;
+            }
+        } catch (Throwable ignored) {}
+        return DEFAULT_MAX_ENTRIES;
+    }
+
+    private static long maxAgeMs() {
+        try {
+            if (ConfigManager.INSTANCE != null && ConfigManager.INSTANCE.veinCacheMaxAgeMs > 0) {
+                return ConfigManager.INSTANCE.veinCacheMaxAgeMs;
+            }
+        } catch (Throwable ignored) {}
+        return DEFAULT_MAX_AGE_MS;
+    }
+}
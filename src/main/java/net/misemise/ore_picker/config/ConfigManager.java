@@ -22,10 +22,49 @@ public final class ConfigManager {
     public int maxVeinSize = 64;
     public int maxVeinSizeCap = 512;
     public boolean mergeDifferentOreTypes = false;
+    // mergeDifferentOreTypes 時のまとめ方: family（deepslate_ / nether_ 違いだけまとめる） / all（全鉱石を 1 つに）
+    public String oreMergeScope = "family";
+    // 鉱脈探索の隣接数: 6（面）/ 18（面+辺）/ 26（面+辺+角）。クライアントのプレビューも同じ値を使う
+    public int veinConnectivity = 6;
+    // 鉱脈探索をワーカースレッドで行う（サーバースレッドはセクションの複製と結果の検証だけ）
+    public boolean offThreadScan = false;
+    // offThreadScan 時、逐次探索でこの数に届いた鉱脈は ForkJoinPool で並列に探し直す
+    public int parallelScanThreshold = 256;
+    // 探索済みの鉱脈の形をサーバー側で覚えて使い回す（ブロック変化で無効化）。prefetchWhileHolding でも有効になる。
+    // ブロック変化のフックは起動時に有効なときだけ入るので、途中で有効にしたら再起動が要る
+    public boolean veinShapeCache = false;
+    public int veinCacheMaxEntries = 64;
+    public long veinCacheMaxAgeMs = 5000L;
+    // ホールドキーを押している間、狙っている鉱脈をワーカーで先に探索してキャッシュしておく（veinShapeCache も有効になる）
+    public boolean prefetchWhileHolding = false;
+    public int prefetchIntervalTicks = 5;
+    // 破壊イベントの tick 内で開始ブロックと最初の予算分を壊す（無効なら次の tick に予約する）
+    public boolean sameTickVeinExecution = false;
     public boolean autoCollectEnabled = true;
     public double pickupRadius = 1.5d;
     public String extraOreBlocks = "";
     public boolean debug = false;
+    // 一括破壊に使う 1 tick あたりの処理予算（ミリ秒）。超えた分は次の tick に持ち越す
+    public double veinTickBudgetMs = 10.0d;
+    // 一括破壊のブロック数/秒の上限（プレイヤーごと / サーバー全体、0 以下で無制限）。超えた分は捨てずに待たせる
+    public double veinRatePerPlayer = 0.0d;
+    public double veinRateGlobal = 0.0d;
+    // 上のレート制限のバケット容量（ブロック数、0 以下ならレート 1 秒分）
+    public int veinRateBurst = 0;
+    // ドロップを ItemEntity にせず、鉱脈分をまとめて直接インベントリへ入れる
+    public boolean directToInventory = false;
+    // 鉱脈の除去を近傍通知無しで行い、スライスの終わりごとに外周だけ更新する
+    public boolean boundaryOnlyUpdates = false;
+    // boundaryOnlyUpdates 時、除去の通知をセクションごとの差分パケットにまとめて送る
+    public boolean sectionDeltaPackets = true;
+    // 破壊エフェクトをブロックごとではなくスライスごとに 1 パケットで送る（破壊音は鉱脈ごとに 1 回）
+    public boolean bulkBreakEffects = false;
+    // bulkBreakEffects 時に 1 スライスでパーティクルを出すブロック数の上限
+    public int breakEffectsMaxParticles = 16;
+    // boundaryOnlyUpdates 時、除去中の光源チェックを止め、スライスの終わりごとに外周だけまとめて積む
+    public boolean deferLightUpdates = false;
+    // 実行中のジョブをワールドの data/orepicker_jobs.journal に記録し、クラッシュ等で渡せなかったドロップを次回払い戻す
+    public boolean veinJournal = true;
 
     private static final String CONFIG_DIR = "config";
     private static final String CONFIG_NAME = "orepicker.properties";
@@ -121,10 +160,31 @@ public final class ConfigManager {
         this.maxVeinSize = parseInt(p.getProperty("maxVeinSize"), this.maxVeinSize);
         this.maxVeinSizeCap = parseInt(p.getProperty("maxVeinSizeCap"), this.maxVeinSizeCap);
         this.mergeDifferentOreTypes = parseBoolean(p.getProperty("mergeDifferentOreTypes"), this.mergeDifferentOreTypes);
+        this.oreMergeScope = p.getProperty("oreMergeScope", this.oreMergeScope);
+        this.veinConnectivity = parseInt(p.getProperty("veinConnectivity"), this.veinConnectivity);
+        this.offThreadScan = parseBoolean(p.getProperty("offThreadScan"), this.offThreadScan);
+        this.parallelScanThreshold = parseInt(p.getProperty("parallelScanThreshold"), this.parallelScanThreshold);
+        this.veinShapeCache = parseBoolean(p.getProperty("veinShapeCache"), this.veinShapeCache);
+        this.veinCacheMaxEntries = parseInt(p.getProperty("veinCacheMaxEntries"), this.veinCacheMaxEntries);
+        this.veinCacheMaxAgeMs = parseLong(p.getProperty("veinCacheMaxAgeMs"), this.veinCacheMaxAgeMs);
+        this.prefetchWhileHolding = parseBoolean(p.getProperty("prefetchWhileHolding"), this.prefetchWhileHolding);
+        this.prefetchIntervalTicks = parseInt(p.getProperty("prefetchIntervalTicks"), this.prefetchIntervalTicks);
+        this.sameTickVeinExecution = parseBoolean(p.getProperty("sameTickVeinExecution"), this.sameTickVeinExecution);
         this.autoCollectEnabled = parseBoolean(p.getProperty("autoCollectEnabled"), this.autoCollectEnabled);
         this.pickupRadius = parseDouble(p.getProperty("pickupRadius"), this.pickupRadius);
         this.extraOreBlocks = p.getProperty("extraOreBlocks", this.extraOreBlocks);
         this.debug = parseBoolean(p.getProperty("debug"), this.debug);
+        this.veinTickBudgetMs = parseDouble(p.getProperty("veinTickBudgetMs"), this.veinTickBudgetMs);
+        this.veinRatePerPlayer = parseDouble(p.getProperty("veinRatePerPlayer"), this.veinRatePerPlayer);
+        this.veinRateGlobal = parseDouble(p.getProperty("veinRateGlobal"), this.veinRateGlobal);
+        this.veinRateBurst = parseInt(p.getProperty("veinRateBurst"), this.veinRateBurst);
+        this.directToInventory = parseBoolean(p.getProperty("directToInventory"), this.directToInventory);
+        this.boundaryOnlyUpdates = parseBoolean(p.getProperty("boundaryOnlyUpdates"), this.boundaryOnlyUpdates);
+        this.sectionDeltaPackets = parseBoolean(p.getProperty("sectionDeltaPackets"), this.sectionDeltaPackets);
+        this.bulkBreakEffects = parseBoolean(p.getProperty("bulkBreakEffects"), this.bulkBreakEffects);
+        this.breakEffectsMaxParticles = parseInt(p.getProperty("breakEffectsMaxParticles"), this.breakEffectsMaxParticles);
+        this.veinJournal = parseBoolean(p.getProperty("veinJournal"), this.veinJournal);
+        this.deferLightUpdates = parseBoolean(p.getProperty("deferLightUpdates"), this.deferLightUpdates);
 
         // 新しい設定項目を読み込む
         this.languageOverride = p.getProperty("languageOverride", this.languageOverride);
@@ -141,9 +201,31 @@ public final class ConfigManager {
 
         System.out.println("[OrePicker] ConfigManager: reloaded config (maxVeinSize=" + this.maxVeinSize
                 + ", maxVeinSizeCap=" + this.maxVeinSizeCap
+                + ", mergeDifferentOreTypes=" + this.mergeDifferentOreTypes
+                + ", oreMergeScope=" + this.oreMergeScope
+                + ", veinConnectivity=" + this.veinConnectivity
+                + ", offThreadScan=" + this.offThreadScan
+                + ", parallelScanThreshold=" + this.parallelScanThreshold
+                + ", veinShapeCache=" + this.veinShapeCache
+                + ", veinCacheMaxEntries=" + this.veinCacheMaxEntries
+                + ", veinCacheMaxAgeMs=" + this.veinCacheMaxAgeMs
+                + ", prefetchWhileHolding=" + this.prefetchWhileHolding
+                + ", prefetchIntervalTicks=" + this.prefetchIntervalTicks
+                + ", sameTickVeinExecution=" + this.sameTickVeinExecution
                 + ", autoCollectEnabled=" + this.autoCollectEnabled
                 + ", pickupRadius=" + this.pickupRadius
                 + ", debug=" + this.debug
+                + ", veinTickBudgetMs=" + this.veinTickBudgetMs
+                + ", veinRatePerPlayer=" + this.veinRatePerPlayer
+                + ", veinRateGlobal=" + this.veinRateGlobal
+                + ", veinRateBurst=" + this.veinRateBurst
+                + ", directToInventory=" + this.directToInventory
+                + ", boundaryOnlyUpdates=" + this.boundaryOnlyUpdates
+                + ", sectionDeltaPackets=" + this.sectionDeltaPackets
+                + ", bulkBreakEffects=" + this.bulkBreakEffects
+                + ", breakEffectsMaxParticles=" + this.breakEffectsMaxParticles
+                + ", veinJournal=" + this.veinJournal
+                + ", deferLightUpdates=" + this.deferLightUpdates
                 + ", languageOverride=" + this.languageOverride
                 + ", requirePickaxeForVein=" + this.requirePickaxeForVein
                 + ", applyInCreative=" + this.applyInCreative
@@ -166,10 +248,31 @@ public final class ConfigManager {
         p.setProperty("maxVeinSize", Integer.toString(this.maxVeinSize));
         p.setProperty("maxVeinSizeCap", Integer.toString(this.maxVeinSizeCap));
         p.setProperty("mergeDifferentOreTypes", Boolean.toString(this.mergeDifferentOreTypes));
+        p.setProperty("oreMergeScope", this.oreMergeScope == null ? "family" : this.oreMergeScope);
+        p.setProperty("veinConnectivity", Integer.toString(this.veinConnectivity));
+        p.setProperty("offThreadScan", Boolean.toString(this.offThreadScan));
+        p.setProperty("parallelScanThreshold", Integer.toString(this.parallelScanThreshold));
+        p.setProperty("veinShapeCache", Boolean.toString(this.veinShapeCache));
+        p.setProperty("veinCacheMaxEntries", Integer.toString(this.veinCacheMaxEntries));
+        p.setProperty("veinCacheMaxAgeMs", Long.toString(this.veinCacheMaxAgeMs));
+        p.setProperty("prefetchWhileHolding", Boolean.toString(this.prefetchWhileHolding));
+        p.setProperty("prefetchIntervalTicks", Integer.toString(this.prefetchIntervalTicks));
+        p.setProperty("sameTickVeinExecution", Boolean.toString(this.sameTickVeinExecution));
         p.setProperty("autoCollectEnabled", Boolean.toString(this.autoCollectEnabled));
         p.setProperty("pickupRadius", Double.toString(this.pickupRadius));
         p.setProperty("extraOreBlocks", this.extraOreBlocks == null ? "" : this.extraOreBlocks);
         p.setProperty("debug", Boolean.toString(this.debug));
+        p.setProperty("veinTickBudgetMs", Double.toString(this.veinTickBudgetMs));
+        p.setProperty("veinRatePerPlayer", Double.toString(this.veinRatePerPlayer));
+        p.setProperty("veinRateGlobal", Double.toString(this.veinRateGlobal));
+        p.setProperty("veinRateBurst", Integer.toString(this.veinRateBurst));
+        p.setProperty("directToInventory", Boolean.toString(this.directToInventory));
+        p.setProperty("boundaryOnlyUpdates", Boolean.toString(this.boundaryOnlyUpdates));
+        p.setProperty("sectionDeltaPackets", Boolean.toString(this.sectionDeltaPackets));
+        p.setProperty("bulkBreakEffects", Boolean.toString(this.bulkBreakEffects));
+        p.setProperty("breakEffectsMaxParticles", Integer.toString(this.breakEffectsMaxParticles));
+        p.setProperty("veinJournal", Boolean.toString(this.veinJournal));
+        p.setProperty("deferLightUpdates", Boolean.toString(this.deferLightUpdates));
 
         // 新しく永続化する項目
         p.setProperty("languageOverride", this.languageOverride == null ? "" : this.languageOverride);
@@ -254,6 +357,10 @@ public final class ConfigManager {
         if (s == null) return fallback;
         try { return Integer.parseInt(s.trim()); } catch (NumberFormatException e) { return fallback; }
     }
+    private long parseLong(String s, long fallback) {
+        if (s == null) return fallback;
+        try { return Long.parseLong(s.trim()); } catch (NumberFormatException e) { return fallback; }
+    }
     private double parseDouble(String s, double fallback) {
         if (s == null) return fallback;
         try { return Double.parseDouble(s.trim()); } catch (NumberFormatException e) { return fallback; }
@@ -18,10 +18,13 @@ public class ModConfig {
      * 異なる種類の鉱石（例: modA:ore_x と modB:ore_y）が混在している場合に、
      * それらを同一鉱床としてまとめて探索するか。
      * - false: 同一ブロック種のみ連結（安全）
-     * - true: OreUtils.isOre(...) ベースの連結を許可（強力）
+     * - true: OreEquivalence の同値クラスで連結（まとめ方は oreMergeScope）
      */
     public boolean mergeDifferentOreTypes = false;
 
+    /** mergeDifferentOreTypes 時のまとめ方: "family"（deepslate_ / nether_ 違いのみ） / "all"（全鉱石） */
+    public String oreMergeScope = "family";
+
     /** 自動回収を有効にするか (true/false) */
     public boolean autoCollectEnabled = true;
 
@@ -0,0 +1,13 @@
+package net.misemise.ore_picker.mixin;
+
+import net.minecraft.block.ExperienceDroppingBlock;
+import net.minecraft.util.math.intprovider.IntProvider;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(ExperienceDroppingBlock.class)
+public interface ExperienceDroppingBlockAccessor {
+    // バニラが破壊時に落とす XP の幅（鉱石ごとに登録時に決まっている）
+    @Accessor("experienceDropped")
+    IntProvider orepicker$getExperienceDropped();
+}
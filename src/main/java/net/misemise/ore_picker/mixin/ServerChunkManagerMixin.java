@@ -0,0 +1,18 @@
+package net.misemise.ore_picker.mixin;
+
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.util.math.BlockPos;
+import net.misemise.ore_picker.SectionDeltaBatcher;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ServerChunkManager.class)
+public class ServerChunkManagerMixin {
+    // 一括除去の座標はクライアントへ送らない（VeinJob がセクションごとの差分パケットにまとめて送る）
+    @Inject(method = "markForUpdate", at = @At("HEAD"), cancellable = true)
+    private void orepicker$deferBlockUpdate(BlockPos pos, CallbackInfo ci) {
+        if (SectionDeltaBatcher.isDeferred(pos)) ci.cancel();
+    }
+}
@@ -0,0 +1,19 @@
+package net.misemise.ore_picker.mixin;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.misemise.ore_picker.VeinShapeCache;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ServerWorld.class)
+public class ServerWorldMixin {
+    // ブロックが変わったセクションに触れている鉱脈の形キャッシュを捨てる
+    @Inject(method = "onBlockChanged", at = @At("HEAD"))
+    private void orepicker$invalidateVeinShapes(BlockPos pos, BlockState oldBlock, BlockState newBlock, CallbackInfo ci) {
+        VeinShapeCache.onBlockChanged((ServerWorld) (Object) this, pos);
+    }
+}
@@ -0,0 +1,22 @@
+package net.misemise.ore_picker.mixin;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.LightingProvider;
+import net.misemise.ore_picker.LightDeferral;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+
+@Mixin(WorldChunk.class)
+public class WorldChunkMixin {
+    // 一括除去中は光源チェックを積まない（VeinJob が完了時に外周だけまとめて積み直す）
+    @Redirect(
+            method = "setBlockState",
+            at = @At(value = "INVOKE", target = "Lnet/minecraft/world/chunk/light/LightingProvider;checkBlock(Lnet/minecraft/util/math/BlockPos;)V")
+    )
+    private void orepicker$deferCheckBlock(LightingProvider provider, BlockPos pos) {
+        if (LightDeferral.isSuspended()) return;
+        provider.checkBlock(pos);
+    }
+}
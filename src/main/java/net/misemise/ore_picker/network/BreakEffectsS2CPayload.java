@@ -0,0 +1,36 @@
+package net.misemise.ore_picker.network;
+
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+
+/**
+ * Server -> Client payload: 1 鉱脈分の破壊エフェクトをまとめて送る。
+ *
+ * - positions: BlockPos.asLong() で詰めた座標（サーバー側で上限数まで間引き済み）
+ * - stateIds: 各座標の Block.getRawIdFromState(...)（パーティクルの見た目用）
+ *
+ * 破壊音はサーバー側で 1 回だけ鳴らすので、ここには含めない。
+ */
+public record BreakEffectsS2CPayload(long[] positions, int[] stateIds) implements CustomPayload {
+    public static final Identifier ID = NetworkUtil.makeIdentifier("orepicker", "break_effects");
+    public static final CustomPayload.Id<BreakEffectsS2CPayload> TYPE = new CustomPayload.Id<>(ID);
+
+    public static final PacketCodec<PacketByteBuf, BreakEffectsS2CPayload> CODEC =
+            PacketCodec.of(BreakEffectsS2CPayload::write, BreakEffectsS2CPayload::new);
+
+    private BreakEffectsS2CPayload(PacketByteBuf buf) {
+        this(buf.readLongArray(), buf.readIntArray());
+    }
+
+    private void write(PacketByteBuf buf) {
+        buf.writeLongArray(positions);
+        buf.writeIntArray(stateIds);
+    }
+
+    @Override
+    public CustomPayload.Id<? extends CustomPayload> getId() {
+        return TYPE;
+    }
+}